@@ -8,10 +8,41 @@ uniform vec2 u_campos;
 uniform vec2 u_resolution;
 
 uniform int u_blackholecount;
+
+uniform sampler2D u_bins;
+uniform vec2 u_binsize;
+uniform vec2 u_tiles;
+
+varying vec2 v_texCoords;
+
+#ifdef DATA_TEXTURE
+uniform highp sampler2D u_bhdata;
+uniform vec2 u_datasize;
+
+vec4 dataTexel(float index){
+    float y = floor(index / u_datasize.x);
+    return texture2D(u_bhdata, (vec2(index - y * u_datasize.x, y) + 0.5) / u_datasize);
+}
+
+vec4 getBlackHole(int i){
+    return dataTexel(float(i) * 2.0);
+}
+
+vec4 getColor(int i){
+    return dataTexel(float(i) * 2.0 + 1.0);
+}
+#else
 uniform vec4 u_blackholes[MAX_COUNT];
 uniform vec4 u_colors[MAX_COUNT];
 
-varying vec2 v_texCoords;
+vec4 getBlackHole(int i){
+    return u_blackholes[i];
+}
+
+vec4 getColor(int i){
+    return u_colors[i];
+}
+#endif
 
 //https://stackoverflow.com/a/72973369
 vec4 blendOver(vec4 a, vec4 b) {
@@ -21,14 +52,34 @@ vec4 blendOver(vec4 a, vec4 b) {
     return vec4(newColor * divideFactor, newAlpha);
 }
 
+//Reads an integer stored across 8 bit channels, lowest byte first.
+float decode(vec3 v){
+    vec3 b = floor(v * 255.0 + 0.5);
+    return b.x + b.y * 256.0 + b.z * 65536.0;
+}
+
+vec4 binTexel(float index){
+    float y = floor(index / u_binsize.x);
+    return texture2D(u_bins, (vec2(index - y * u_binsize.x, y) + 0.5) / u_binsize);
+}
+
 //Made by MEEPofFaith
 void main() {
     vec2 c = v_texCoords.xy;
     vec2 coords = (c * u_resolution) + u_campos;
     vec4 col = vec4(0.0);
 
-    for(int i = 0; i < u_blackholecount; ++i){
-        vec4 blackhole = u_blackholes[i];
+    //Only check the black holes that overlap this pixel's screen tile
+    vec2 tile = clamp(floor(c * u_tiles), vec2(0.0), u_tiles - 1.0);
+    float header = (tile.y * u_tiles.x + tile.x) * 2.0;
+    float start = decode(binTexel(header).rgb);
+    int count = int(decode(binTexel(header + 1.0).rgb));
+
+    for(int k = 0; k < MAX_COUNT; ++k){
+        if(k >= count || k >= u_blackholecount) break;
+
+        int i = int(decode(binTexel(start + float(k)).rgb));
+        vec4 blackhole = getBlackHole(i);
         float cX = blackhole.r;
         float cY = blackhole.g;
         float iR = blackhole.b;
@@ -43,7 +94,7 @@ void main() {
             continue;
         }else{ //Add color
             float p = 1.0 - (dst - iR) / (rad - iR);
-            vec4 c1 = u_colors[i];
+            vec4 c1 = getColor(i);
             c1.a = p;
 
             col = blendOver(col, c1);
@@ -2,16 +2,67 @@
 
 #define HALFPI 3.1415926535897932384626433832795 / 2.0
 
+#define SCL 0.125
+
 uniform sampler2D u_texture;
 
 uniform vec2 u_campos;
 uniform vec2 u_resolution;
 
 uniform int u_blackholecount;
-uniform vec4 u_blackholes[MAX_COUNT];
+
+#ifdef DISPLACEMENT
+uniform float u_range;
+#endif
+
+uniform sampler2D u_bins;
+uniform vec2 u_binsize;
+uniform vec2 u_tiles;
 
 varying vec2 v_texCoords;
 
+#ifdef DATA_TEXTURE
+uniform highp sampler2D u_bhdata;
+uniform vec2 u_datasize;
+
+vec4 dataTexel(float index){
+    float y = floor(index / u_datasize.x);
+    return texture2D(u_bhdata, (vec2(index - y * u_datasize.x, y) + 0.5) / u_datasize);
+}
+
+vec4 getBlackHole(int i){
+    return dataTexel(float(i) * 2.0);
+}
+
+vec4 getColor(int i){
+    return dataTexel(float(i) * 2.0 + 1.0);
+}
+#else
+uniform vec4 u_blackholes[MAX_COUNT];
+
+vec4 getBlackHole(int i){
+    return u_blackholes[i];
+}
+
+#ifdef COMPOSITE
+uniform vec4 u_colors[MAX_COUNT];
+
+vec4 getColor(int i){
+    return u_colors[i];
+}
+#endif
+#endif
+
+#ifdef COMPOSITE
+//https://stackoverflow.com/a/72973369
+vec4 blendOver(vec4 a, vec4 b) {
+    float newAlpha = mix(b.w, 1.0, a.w);
+    vec3 newColor = mix(b.w * b.xyz, a.xyz, a.w);
+    float divideFactor = (newAlpha > 0.001 ? (1.0 / newAlpha) : 1.0);
+    return vec4(newColor * divideFactor, newAlpha);
+}
+#endif
+
 float interp(float a){
     float f = a - 1.0;
     float t = a;
@@ -34,14 +85,37 @@ float interp(float a){
     return f + (t - f) * a;
 }
 
+//Reads an integer stored across 8 bit channels, lowest byte first.
+float decode(vec3 v){
+    vec3 b = floor(v * 255.0 + 0.5);
+    return b.x + b.y * 256.0 + b.z * 65536.0;
+}
+
+vec4 binTexel(float index){
+    float y = floor(index / u_binsize.x);
+    return texture2D(u_bins, (vec2(index - y * u_binsize.x, y) + 0.5) / u_binsize);
+}
+
 //Made by MEEPofFaith
 void main() {
     vec2 c = v_texCoords.xy;
     vec2 coords = (c * u_resolution) + u_campos;
 
+    //Only check the black holes that overlap this pixel's screen tile
+    vec2 tile = clamp(floor(c * u_tiles), vec2(0.0), u_tiles - 1.0);
+    float header = (tile.y * u_tiles.x + tile.x) * 2.0;
+    float start = decode(binTexel(header).rgb);
+    int count = int(decode(binTexel(header + 1.0).rgb));
+
     vec2 offset = vec2(0.0);
-    for(int i = 0; i < u_blackholecount; ++i){
-        vec4 blackhole = u_blackholes[i];
+#ifdef COMPOSITE
+    vec4 rim = vec4(0.0);
+#endif
+    for(int k = 0; k < MAX_COUNT; ++k){
+        if(k >= count || k >= u_blackholecount) break;
+
+        int i = int(decode(binTexel(start + float(k)).rgb));
+        vec4 blackhole = getBlackHole(i);
         float cX = blackhole.r;
         float cY = blackhole.g;
         float iR = blackhole.b;
@@ -49,8 +123,14 @@ void main() {
 
         float dst = distance(blackhole.xy, coords);
         if(dst < iR){ //Inside black hole, set to black
+#ifdef DISPLACEMENT
+            //Horizons are drawn separately at full resolution
+            offset = vec2(0.0);
+            break;
+#else
             gl_FragColor = vec4(0.0, 0.0, 0.0, 1.0);
             return;
+#endif
         }else if(dst > oR){ //Outside black hole, skip
             continue;
         }else{ //Influence target position
@@ -59,9 +139,30 @@ void main() {
             float a = atan(coords.x - cX, coords.y - cY) + HALFPI;
             vec2 pos = vec2(cX - oR * cos(a) * p, cY + oR * sin(a) * p);
             offset += pos - coords;
+
+#ifdef COMPOSITE
+            //Same glowing rim as blackholerim.frag
+            float rad = iR + (oR - iR) * SCL;
+            if(dst <= rad){
+                vec4 c1 = getColor(i);
+                c1.a = 1.0 - (dst - iR) / (rad - iR);
+                rim = blendOver(rim, c1);
+            }
+#endif
         }
     }
 
+#ifdef DISPLACEMENT
+    //Store each axis as a 16 bit value split across two channels
+    vec2 n = floor(clamp(offset / u_range * 0.5 + 0.5, 0.0, 1.0) * 65535.0 + 0.5);
+    vec2 hi = floor(n / 256.0);
+    vec2 lo = n - hi * 256.0;
+    gl_FragColor = vec4(hi.x, lo.x, hi.y, lo.y) / 255.0;
+#else
     coords += offset;
     gl_FragColor = texture2D(u_texture, (coords - u_campos) / u_resolution);
+#ifdef COMPOSITE
+    gl_FragColor = blendOver(rim, gl_FragColor);
+#endif
+#endif
 }
@@ -0,0 +1,37 @@
+#define HIGHP
+
+uniform sampler2D u_texture;
+uniform sampler2D u_displacement;
+
+uniform vec2 u_campos;
+uniform vec2 u_resolution;
+uniform vec2 u_dispsize;
+uniform float u_range;
+
+//LensingScale.worldToTexel, as world * u_texelscale + u_texeloffset
+uniform vec2 u_texelscale;
+uniform vec2 u_texeloffset;
+
+varying vec2 v_texCoords;
+
+//Inverse of the encoding at the end of gravitationallensing.frag
+vec2 offsetAt(vec2 texel){
+    vec4 b = floor(texture2D(u_displacement, (texel + 0.5) / u_dispsize) * 255.0 + 0.5);
+    vec2 n = vec2(b.r * 256.0 + b.g, b.b * 256.0 + b.a) / 65535.0;
+    return (n * 2.0 - 1.0) * u_range;
+}
+
+void main() {
+    //Filter by hand, the encoded offsets can't be interpolated directly
+    vec2 coords = v_texCoords * u_resolution + u_campos;
+    vec2 pos = coords * u_texelscale + u_texeloffset;
+    vec2 base = floor(pos);
+    vec2 f = pos - base;
+    vec2 offset = mix(
+        mix(offsetAt(base), offsetAt(base + vec2(1.0, 0.0)), f.x),
+        mix(offsetAt(base + vec2(0.0, 1.0)), offsetAt(base + vec2(1.0, 1.0)), f.x),
+        f.y
+    );
+
+    gl_FragColor = texture2D(u_texture, v_texCoords + offset / u_resolution);
+}
@@ -0,0 +1,42 @@
+package blackhole.bench;
+
+import arc.*;
+import arc.graphics.*;
+import arc.graphics.g2d.*;
+
+/** A batch that only counts what is drawn, so render preparation can be measured without a GPU. */
+public class CountingBatch extends Batch{
+    /** Floats per vertex in sprite vertex arrays: x, y, color, u, v and mix color. */
+    private static final int vertexSize = 6;
+
+    public long vertices, primitives, flushes;
+
+    /** Replaces the global batch with a new counting batch. Installs a blank atlas if there is none. */
+    public static CountingBatch install(){
+        if(Core.atlas == null) Core.atlas = TextureAtlas.blankAtlas();
+        CountingBatch batch = new CountingBatch();
+        Core.batch = batch;
+        return batch;
+    }
+
+    public void clear(){
+        vertices = primitives = flushes = 0;
+    }
+
+    @Override
+    protected void draw(Texture texture, float[] spriteVertices, int offset, int count){
+        vertices += count / vertexSize;
+        primitives++;
+    }
+
+    @Override
+    protected void draw(TextureRegion region, float x, float y, float originX, float originY, float width, float height, float rotation){
+        vertices += 4;
+        primitives++;
+    }
+
+    @Override
+    protected void flush(){
+        flushes++;
+    }
+}
@@ -0,0 +1,128 @@
+package blackhole.bench;
+
+import arc.*;
+import arc.func.*;
+import blackhole.headless.*;
+import blackhole.utils.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Tick cost of the black hole physics against a synthetic world. Every invocation applies each hole once.
+ * The defaults make a large matrix, so narrow it down with -p, for example -p units=2000 -p variant=pull.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhysicsBenchmark{
+    @Param({"200", "2000"})
+    public int units;
+    @Param({"0", "500"})
+    public int bullets;
+    @Param({"1", "32"})
+    public int holes;
+    @Param({"80", "240"})
+    public float radius;
+    @Param({"0", "0.3"})
+    public float buildingDensity;
+    /** pull, repel or pierce (pull with armor piercing damage). */
+    @Param({"pull", "repel", "pierce"})
+    public String variant;
+
+    private BenchWorld world;
+    private BlackHoleSpec spec;
+    private static int visited;
+    private static final Cons<Building> countBuilding = build -> visited++;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        //Big enough that the holes rarely overlap entirely
+        world = new BenchWorld(42L, 200, units, bullets, holes, buildingDensity);
+        boolean repel = variant.equals("repel"), pierce = variant.equals("pierce");
+        spec = new BlackHoleSpec(
+            radius / 8f, radius,
+            30f, pierce, 1f, 10f,
+            repel, 10f, 800f, 0.1f, 1f
+        );
+    }
+
+    @Setup(Level.Iteration)
+    public void reset(){
+        world.reset();
+    }
+
+    /** Holes applied one by one, each with its own unit and bullet queries. */
+    @Benchmark
+    public void blackHoleUpdate(){
+        for(int i = 0; i < world.sources.size; i++){
+            BlackHoleUtils.blackHoleUpdate(spec, BenchWorld.holeTeam, world.sources.get(i), 0f, 0f, 1f);
+        }
+    }
+
+    /** Holes queued into the field and applied in a single pass. */
+    @Benchmark
+    public void field(){
+        for(int i = 0; i < world.sources.size; i++){
+            BlackHoleField.register(spec, BenchWorld.holeTeam, world.sources.get(i), 0f, 0f, 1f);
+        }
+        Events.fire(Trigger.afterGameUpdate);
+    }
+
+    /** Same as {@link #field}, with impulses and damage computed on the field's thread pool. */
+    @Benchmark
+    public void fieldParallel(){
+        BlackHoleField.parallel = true;
+        try{
+            field();
+        }finally{
+            BlackHoleField.parallel = false;
+        }
+    }
+
+    /** Same as {@link #field}, with the suction of distant groups approximated by the far field. */
+    @Benchmark
+    public void fieldApproximate(){
+        BlackHoleField.approximate = true;
+        try{
+            field();
+        }finally{
+            BlackHoleField.approximate = false;
+        }
+    }
+
+    @Benchmark
+    public void completeDamage(){
+        for(int i = 0; i < world.sources.size; i++){
+            Unit source = world.sources.get(i);
+            BlackHoleUtils.completeDamage(BenchWorld.holeTeam, source.x, source.y, spec.damageRadius, spec.damage, spec.buildingDamageMultiplier, spec.pierceArmor);
+        }
+    }
+
+    /** Building lookups over the whole suction radius, without damaging anything. */
+    @Benchmark
+    public int trueEachBlock(){
+        visited = 0;
+        for(int i = 0; i < world.sources.size; i++){
+            Unit source = world.sources.get(i);
+            BlackHoleUtils.trueEachBlock(source.x, source.y, radius, countBuilding);
+        }
+        return visited;
+    }
+
+    @Benchmark
+    public void immunity(Blackhole bh){
+        for(int i = 0; i < world.units.size; i++){
+            bh.consume(BlackHoleUtils.isUnitImmune(world.units.get(i)));
+        }
+        for(int i = 0; i < world.bullets.size; i++){
+            bh.consume(BlackHoleUtils.isBulletImmune(world.bullets.get(i).type));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package blackhole.bench;
+
+import arc.graphics.*;
+import arc.math.*;
+import arc.util.*;
+import blackhole.entities.effect.*;
+import blackhole.graphics.*;
+import blackhole.graphics.LightTrail.*;
+import mindustry.core.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * CPU cost of preparing black hole rendering, drawn into a {@link CountingBatch} instead of the GPU.
+ * Vertices, primitives and lights emitted are reported as counters next to each score.
+ * mode only affects {@link #frame} and lightMode only affects {@link #lightTrails}, so narrow the matrix with -p when running a single benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark{
+    /** 1920x1080 screen at the default zoom of 4 pixels per world unit. */
+    private static final int screenW = 1920, screenH = 1080;
+    private static final float pixelsPerUnit = 4f, viewW = screenW / pixelsPerUnit, viewH = screenH / pixelsPerUnit;
+    private static final int trailLength = 8;
+
+    @Param({"1", "16", "128", "512"})
+    public int holes;
+    /** advanced (culling, regions, bins and data packing for the shaders) or simplified (horizons, rims and stars drawn as geometry). */
+    @Param({"advanced", "simplified"})
+    public String mode;
+    @Param({"perSegment", "merged", "capped"})
+    public LightMode lightMode;
+
+    private CountingBatch batch;
+    private final BlackHoleQueue queue = new BlackHoleQueue();
+    private final ScreenRegions regions = new ScreenRegions();
+    private final BlackHoleBins bins = new BlackHoleBins();
+    private final BlackHoleData data = new BlackHoleData();
+    /** x, y, inRadius and outRadius of each hole. A quarter of them are off screen. */
+    private float[] holeData;
+    private final Color color = new Color(Color.sky);
+
+    private CountingLightTrail[] lightTrails;
+    private SwirlEffect swirl;
+    private PooledTrail[] swirlTrails;
+    private float[] swirlData;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        batch = CountingBatch.install();
+        if(state == null) state = new GameState();
+        Time.delta = 1f;
+
+        Rand rand = new Rand(42L);
+        holeData = new float[holes * 4];
+        for(int i = 0; i < holes; i++){
+            boolean offscreen = i % 4 == 3;
+            holeData[i * 4] = offscreen ? viewW * 2f + rand.random(viewW) : rand.random(viewW);
+            holeData[i * 4 + 1] = rand.random(viewH);
+            holeData[i * 4 + 3] = rand.random(8f, 80f);
+            holeData[i * 4 + 2] = holeData[i * 4 + 3] / 4f;
+        }
+
+        lightTrails = new CountingLightTrail[holes];
+        for(int i = 0; i < holes; i++){
+            CountingLightTrail trail = new CountingLightTrail(trailLength, 0.8f);
+            trail.lightMode = lightMode;
+            for(int p = 0; p <= trailLength; p++){
+                trail.update(holeData[i * 4] + p * 4f, holeData[i * 4 + 1] + rand.range(4f), 1f);
+            }
+            lightTrails[i] = trail;
+        }
+
+        //Lights are measured by the light trail benchmark, swirls only cover the trail math and geometry
+        swirl = new SwirlEffect(90f, Color.black, trailLength, 3f, 120f, 480f, -1f, -1f);
+        swirl.lightOpacity = -1f;
+        swirlTrails = new PooledTrail[holes * 8];
+        swirlData = new float[swirlTrails.length * 4];
+        for(int i = 0; i < swirlTrails.length; i++){
+            swirlTrails[i] = swirl.obtainTrail();
+            swirlData[i * 4] = rand.random(swirl.lifetime);
+            swirlData[i * 4 + 1] = rand.random(40f, 120f);
+            swirlData[i * 4 + 2] = rand.random(360f);
+            swirlData[i * 4 + 3] = rand.random(swirl.minRot, swirl.maxRot);
+        }
+    }
+
+    /** Everything the renderer does on the CPU for one frame. */
+    @Benchmark
+    public void frame(RenderCounters counters){
+        queue.view(0f, 0f, viewW, viewH, pixelsPerUnit);
+        for(int i = 0; i < holes; i++){
+            int h = i * 4;
+            float x = holeData[h], y = holeData[h + 1], in = holeData[h + 2], out = holeData[h + 3];
+            queue.addZone(x, y, in, out, color);
+            queue.addStar(x, y, out / 3f, in / 2f, i * 45f, Color.white, color);
+        }
+
+        queue.coalesce();
+        if(mode.equals("advanced")){
+            regions.project(queue.zones, queue.zoneCount, 0f, 0f, viewW, viewH, screenW, screenH, 2);
+            bins.bin(
+                queue.zones, queue.zoneCount, 0f, 0f, viewW, viewH,
+                Mathf.ceil((float)screenW / BlackHoleRenderer.binSize), Mathf.ceil((float)screenH / BlackHoleRenderer.binSize)
+            );
+            data.pack(queue.zones, queue.zoneColors, queue.zoneCount);
+        }else{
+            queue.drawHorizons();
+            queue.drawRims();
+        }
+        queue.drawStars();
+        queue.endFrame();
+
+        counters.take(batch);
+    }
+
+    /** One light trail per hole, drawn with the selected light mode. */
+    @Benchmark
+    public void lightTrails(RenderCounters counters){
+        for(CountingLightTrail trail : lightTrails){
+            trail.draw(Color.white, 3f, 1f);
+            counters.lights += trail.lights;
+            trail.lights = 0;
+        }
+        counters.take(batch);
+    }
+
+    /** Eight swirl particles per hole, moved and drawn the way {@link SwirlEmitter} does it. */
+    @Benchmark
+    public void swirls(RenderCounters counters){
+        float lifetime = swirl.lifetime;
+        for(int i = 0; i < swirlTrails.length; i++){
+            int s = i * 4;
+            float time = (swirlData[s] + Time.delta) % lifetime;
+            swirlData[s] = time;
+            swirl.updateTrail(swirlTrails[i], viewW / 2f, viewH / 2f, time, lifetime, swirlData[s + 1], swirlData[s + 2], swirlData[s + 3]);
+            swirl.drawTrail(swirlTrails[i], time, lifetime, color);
+        }
+        counters.take(batch);
+    }
+
+    /** Counts the lights a light trail submits instead of drawing them. */
+    public static class CountingLightTrail extends LightTrail{
+        public int lights;
+
+        public CountingLightTrail(int length, float lightOpacity){
+            super(length, lightOpacity);
+        }
+
+        @Override
+        protected void light(float x1, float y1, float x2, float y2, float stroke, float alpha){
+            lights++;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package blackhole.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+/** Vertices, primitives and lights emitted per benchmark iteration, reported next to the scores. */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class RenderCounters{
+    public long vertices, primitives, lights;
+
+    @Setup(Level.Iteration)
+    public void clear(){
+        vertices = primitives = lights = 0;
+    }
+
+    /** Adds everything the batch counted since it was last cleared, then clears it. */
+    public void take(CountingBatch batch){
+        vertices += batch.vertices;
+        primitives += batch.primitives;
+        batch.clear();
+    }
+}
@@ -0,0 +1,190 @@
+package blackhole.headless;
+
+import arc.*;
+import arc.backend.headless.*;
+import arc.math.*;
+import arc.struct.*;
+import arc.util.*;
+import blackhole.utils.*;
+import mindustry.*;
+import mindustry.content.*;
+import mindustry.core.*;
+import mindustry.core.GameState.*;
+import mindustry.entities.bullet.*;
+import mindustry.game.*;
+import mindustry.gen.*;
+import mindustry.net.*;
+import mindustry.type.*;
+import mindustry.world.*;
+
+import java.util.concurrent.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Boots a headless Mindustry instance and fills it with a synthetic battlefield. Shared by the benchmarks and the tests.
+ * Black holes belong to {@link #holeTeam}, and every unit, bullet and building they can affect belongs to {@link #enemyTeam},
+ * apart from the units of {@link #bystanderTeam} next to crashing flares.
+ */
+public class BenchWorld{
+    public static final Team holeTeam = Team.sharded, enemyTeam = Team.crux, bystanderTeam = Team.malis;
+    /** Health given to everything by default, so nothing dies during a benchmark. */
+    public static final float durable = 1e30f;
+
+    private static boolean booted;
+
+    public final Seq<Unit> units = new Seq<>(), sources = new Seq<>();
+    public final Seq<Bullet> bullets = new Seq<>();
+    public int buildings;
+    /** Health of units and damage of bullets. Buildings are always {@link #durable}. */
+    public final float health;
+
+    private final Rand rand;
+    private final float[] unitPositions;
+    private final int bulletCount;
+
+    /**
+     * Loads Mindustry's content in a headless application once per JVM, then stops the application loop.
+     * Nothing updates the world afterwards, so benchmarks are the only thing touching it.
+     */
+    public static synchronized void boot(){
+        if(booted) return;
+        booted = true;
+
+        CountDownLatch started = new CountDownLatch(1);
+        Throwable[] error = {null};
+        Thread[] loop = {null};
+        ApplicationCore core = new ApplicationCore(){
+            @Override
+            public void setup(){
+                headless = true;
+                net = new Net(null);
+                tree = new FileTree();
+                Vars.init();
+                content.createBaseContent();
+                add(logic = new Logic());
+                content.init();
+            }
+
+            @Override
+            public void init(){
+                super.init();
+                loop[0] = Thread.currentThread();
+                //Ends the loop on its next iteration, before any world is loaded
+                Core.app.exit();
+                started.countDown();
+            }
+        };
+        new HeadlessApplication(core, e -> {
+            error[0] = e;
+            started.countDown();
+        });
+
+        try{
+            started.await();
+            if(error[0] != null) throw new RuntimeException(error[0]);
+
+            loop[0].join(10000);
+        }catch(InterruptedException e){
+            throw new RuntimeException(e);
+        }
+        if(loop[0].isAlive()) throw new IllegalStateException("The application loop didn't stop.");
+
+        BlackHoleField.init();
+    }
+
+    /**
+     * Builds a square world with units, bullets and buildings spread over it at random.
+     * @param size world size in tiles
+     * @param buildingDensity fraction of tiles covered by walls
+     */
+    public BenchWorld(long seed, int size, int unitCount, int bulletCount, int holeCount, float buildingDensity){
+        this(seed, size, unitCount, bulletCount, holeCount, buildingDensity, durable);
+    }
+
+    /**
+     * Same as above, with units and bullets that can be killed and absorbed.
+     * @param health health of units and damage of bullets
+     */
+    public BenchWorld(long seed, int size, int unitCount, int bulletCount, int holeCount, float buildingDensity, float health){
+        this(seed, size, unitCount, bulletCount, holeCount, buildingDensity, health, false);
+    }
+
+    /**
+     * Same as above, optionally with units whose deaths push other units.
+     * @param crashers if true, every other unit is a flare of {@link #enemyTeam}, followed by a dagger of {@link #bystanderTeam} right next to it.
+     * Flares crash when they die, damaging and pushing ground units of other teams around them.
+     */
+    public BenchWorld(long seed, int size, int unitCount, int bulletCount, int holeCount, float buildingDensity, float health, boolean crashers){
+        boot();
+        rand = new Rand(seed);
+        this.bulletCount = bulletCount;
+        this.health = health;
+
+        Groups.clear();
+        world.loadGenerator(size, size, tiles -> tiles.each((x, y) -> tiles.set(x, y, new Tile(x, y, Blocks.stone, Blocks.air, Blocks.air))));
+        state.rules = new Rules();
+        state.set(State.playing);
+
+        for(Tile tile : world.tiles){
+            if(rand.chance(buildingDensity)){
+                tile.setBlock(Blocks.copperWall, enemyTeam, 0);
+                tile.build.health = durable;
+                buildings++;
+            }
+        }
+
+        float worldSize = size * tilesize;
+        unitPositions = new float[unitCount * 2];
+        for(int i = 0; i < unitCount; i++){
+            boolean bystander = crashers && i % 2 == 1;
+            if(bystander){
+                //Within reach of the previous flare's crash
+                unitPositions[i * 2] = unitPositions[i * 2 - 2] + rand.range(4f);
+                unitPositions[i * 2 + 1] = unitPositions[i * 2 - 1] + rand.range(4f);
+            }else{
+                unitPositions[i * 2] = rand.random(worldSize);
+                unitPositions[i * 2 + 1] = rand.random(worldSize);
+            }
+
+            UnitType type = crashers && !bystander ? UnitTypes.flare : UnitTypes.dagger;
+            units.add(type.spawn(bystander ? bystanderTeam : enemyTeam, unitPositions[i * 2], unitPositions[i * 2 + 1]));
+        }
+        for(int i = 0; i < holeCount; i++){
+            sources.add(UnitTypes.flare.spawn(holeTeam, rand.random(worldSize), rand.random(worldSize)));
+        }
+
+        reset();
+    }
+
+    /** Moves units back to where they started, restores health and replaces bullets. Call between iterations. */
+    public void reset(){
+        for(int i = 0; i < units.size; i++){
+            Unit unit = units.get(i);
+            unit.set(unitPositions[i * 2], unitPositions[i * 2 + 1]);
+            unit.vel.setZero();
+            unit.health = health;
+        }
+
+        for(int i = 0; i < bullets.size; i++){
+            Bullet bullet = bullets.get(i);
+            if(bullet.isAdded()) bullet.remove();
+        }
+        bullets.clear();
+
+        BulletType type = UnitTypes.dagger.weapons.first().bullet;
+        float worldSize = world.unitWidth();
+        for(int i = 0; i < bulletCount; i++){
+            Bullet bullet = type.create(null, enemyTeam, rand.random(worldSize), rand.random(worldSize), rand.random(360f));
+            //With durable health, bullets lose damage to holes without ever being absorbed, so every invocation visits the same bullets
+            bullet.damage = health;
+            bullets.add(bullet);
+        }
+
+        Groups.resize();
+        Groups.unit.updatePhysics();
+        Groups.bullet.updatePhysics();
+        state.teams.updateTeamStats();
+        Time.delta = 1f;
+    }
+}
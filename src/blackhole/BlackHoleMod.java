@@ -2,6 +2,8 @@ package blackhole;
 
 import blackhole.entities.effect.*;
 import blackhole.graphics.*;
+import blackhole.ui.*;
+import blackhole.utils.*;
 import mindustry.mod.*;
 
 import static arc.Core.*;
@@ -18,10 +20,23 @@ public class BlackHoleMod extends Mod{
 
     @Override
     public void init(){
+        BlackHoleField.init();
+        BlackHoleStats.init();
+
         if(headless) return;
 
         BlackHoleRenderer.init(settings.getBool("advanced-black-hole-rendering", true));
+        SwirlEffect.prewarmAll();
+        SwirlEmitter.init();
+        BlackHoleRenderer.toggleComposite(settings.getBool("black-hole-composite", true));
+        BlackHoleRenderer.toggleCoalesce(settings.getBool("black-hole-coalesce", true));
+        BlackHoleStats.enable(settings.getBool("black-hole-stats", false));
+        BlackHoleStatsOverlay.init();
 
         ui.settings.graphics.checkPref("advanced-black-hole-rendering", true, BlackHoleRenderer::toggleAdvanced);
+        ui.settings.graphics.checkPref("black-hole-composite", true, BlackHoleRenderer::toggleComposite);
+        ui.settings.graphics.checkPref("black-hole-coalesce", true, BlackHoleRenderer::toggleCoalesce);
+        ui.settings.graphics.sliderPref("black-hole-lensing-resolution", 0, 0, LensingScale.scales.length - 1, 1, i -> (int)(LensingScale.scale(i) * 100f) + "%");
+        ui.settings.graphics.checkPref("black-hole-stats", false, BlackHoleStats::enable);
     }
 }
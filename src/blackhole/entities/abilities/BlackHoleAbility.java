@@ -8,6 +8,7 @@ import arc.util.*;
 import blackhole.entities.effect.*;
 import blackhole.graphics.*;
 import blackhole.utils.*;
+import blackhole.utils.BlackHoleStats.*;
 import mindustry.entities.*;
 import mindustry.entities.abilities.*;
 import mindustry.gen.*;
@@ -21,6 +22,7 @@ public class BlackHoleAbility extends Ability{
     protected static Vec2 vec = new Vec2();
     
     public float x, y;
+    /** Ticks between physics updates at full priority. Updates are scheduled by {@link BlackHoleScheduler}. */
     public float damageInterval = 2f;
     /** If true, only activates when shooting. */
     public boolean whenShooting = false;
@@ -48,8 +50,12 @@ public class BlackHoleAbility extends Ability{
     public int swirlEffects = 4;
     public boolean counterClockwise = false;
 
+    /** Suction parameters, created in init or on first use. Set to null to rebuild after changing fields. */
+    public @Nullable BlackHoleSpec spec;
+
     protected float effectTimer;
     protected float suctionTimer;
+    protected boolean phased;
     protected float scl;
 
     @Override
@@ -66,6 +72,21 @@ public class BlackHoleAbility extends Ability{
         if(!whenShooting) scl = 1f;
         if(starWidth > 0 && starHeight < 0) starHeight = starWidth / 2;
         BlackHoleUtils.immuneUnits.add(type);
+
+        spec = null;
+        spec();
+    }
+
+    /** @return Suction parameters, built from the current fields if they haven't been yet. */
+    public BlackHoleSpec spec(){
+        if(spec == null){
+            spec = new BlackHoleSpec(
+                damageRadius, suctionRadius,
+                damage, bulletDamage,
+                repel, force, scaledForce, bulletForce, scaledBulletForce
+            );
+        }
+        return spec;
     }
 
     @Override
@@ -73,6 +94,7 @@ public class BlackHoleAbility extends Ability{
         if(!drawBlackHole || scl < 0.01f) return;
 
         vec.set(x, y).rotate(unit.rotation - 90f).add(unit);
+        BlackHoleStats.hole(Source.ability);
         BlackHoleRenderer.addBlackHole(
             vec.x, vec.y,
             horizonRadius * scl, lensingRadius * scl,
@@ -98,27 +120,36 @@ public class BlackHoleAbility extends Ability{
 
         if(scl < 0.01f) return;
 
+        if(!phased){
+            suctionTimer = BlackHoleScheduler.start(unit.id, damageInterval);
+            phased = true;
+        }
+
         vec.set(x, y).rotate(unit.rotation - 90f);
-        if((suctionTimer += Time.delta) >= damageInterval){
-            BlackHoleUtils.blackHoleUpdate(
-                unit.team, unit, vec.x, vec.y,
-                damageRadius * scl, suctionRadius * scl,
-                damage, bulletDamage,
-                repel, force, scaledForce, bulletForce, scaledBulletForce
-            );
-            suctionTimer %= damageInterval;
+        float strength = BlackHoleScheduler.due(unit.x + vec.x, unit.y + vec.y, suctionTimer, damageInterval);
+        if(strength > 0f){
+            BlackHoleSpec spec = spec();
+            BlackHoleField.register(spec, unit.team, unit, vec.x, vec.y, scl, spec.damage, spec.bulletDamage, strength);
+            suctionTimer = BlackHoleScheduler.carry(suctionTimer, damageInterval, strength);
         }
+        suctionTimer += Time.delta;
 
-        if((effectTimer += Time.delta) >= swirlInterval){
-            vec.add(unit);
-            for(int i = 0; i < swirlEffects; i++){
-                swirlEffect.at(
-                    vec.x, vec.y,
-                    suctionRadius * (counterClockwise ? -1f : 1f),
-                    teamColor(unit, color), unit
-                );
+        vec.add(unit);
+        //Low priority holes spawn less often, and holes without a share not at all
+        float share = SwirlBudget.share(vec.x, vec.y, suctionRadius);
+        float interval = share > 0f ? swirlInterval / share : swirlInterval;
+        if((effectTimer += Time.delta) >= interval){
+            SwirlBudget.suppress(swirlEffects, share);
+            if(share > 0f){
+                for(int i = 0; i < swirlEffects; i++){
+                    swirlEffect.at(
+                        vec.x, vec.y,
+                        suctionRadius * (counterClockwise ? -1f : 1f),
+                        teamColor(unit, color), unit
+                    );
+                }
             }
-            effectTimer %= swirlInterval;
+            effectTimer %= interval;
         }
     }
 }
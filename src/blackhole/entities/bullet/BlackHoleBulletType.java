@@ -7,6 +7,7 @@ import arc.util.*;
 import blackhole.entities.effect.*;
 import blackhole.graphics.*;
 import blackhole.utils.*;
+import blackhole.utils.BlackHoleStats.*;
 import mindustry.audio.*;
 import mindustry.content.*;
 import mindustry.entities.*;
@@ -29,6 +30,10 @@ public class BlackHoleBulletType extends BulletType{
     /** Scaled amount of force applied to bullets. As bullets get closer to the center, more of scaledForce is added to force. */
     public float scaledBulletForce = 1f;
     public float bulletDamage = 10f;
+    /** Ticks between physics updates at full priority. Updates are scheduled by {@link BlackHoleScheduler}. */
+    public float physicsInterval = 2f;
+    /** Bullet timer slot that tracks the time since the last physics update. */
+    public int physicsTimer = 1;
     /** Color of black hole and effects. If null, uses team color. */
     public @Nullable Color color = null;
     public float growTime = 10f, shrinkTime = -1f;
@@ -43,6 +48,9 @@ public class BlackHoleBulletType extends BulletType{
     public Sound loopSound = Sounds.loopThoriumReactor;
     public float loopSoundVolume = 2f;
 
+    /** Suction parameters, created in init or on first use. Set to null to rebuild after changing fields. */
+    public @Nullable BlackHoleSpec spec;
+
     public BlackHoleBulletType(float speed, float damage){
         super(speed, damage);
         hittable = absorbable = false;
@@ -66,19 +74,35 @@ public class BlackHoleBulletType extends BulletType{
 
         drawSize = Math.max(drawSize, lensingRadius * 2f);
 
+        spec = null;
+        spec();
+
         if(swirlEffect instanceof SwirlEffect s && s.maxDst <= 0){
             s.clip = Math.max(s.clip, suctionRadius * 2f);
         }
     }
 
+    /** @return Suction parameters, built from the current fields if they haven't been yet. */
+    public BlackHoleSpec spec(){
+        if(spec == null){
+            spec = new BlackHoleSpec(
+                damageRadius, suctionRadius,
+                damage, pierceArmor, buildingDamageMultiplier, bulletDamage,
+                repel, force, scaledForce, bulletForce, scaledBulletForce
+            );
+        }
+        return spec;
+    }
+
     @Override
     public float continuousDamage(){
-        return damage / 2f * 60f; //Damage every 2 ticks
+        return damage / physicsInterval * 60f;
     }
 
     @Override
     public void init(Bullet b){
         super.init(b);
+        b.timer.reset(physicsTimer, BlackHoleScheduler.start(b.id, physicsInterval));
 
         if(loopSound != null){
             b.data = new SoundLoop(loopSound, loopSoundVolume);
@@ -87,14 +111,11 @@ public class BlackHoleBulletType extends BulletType{
 
     @Override
     public void update(Bullet b){
-        if(b.timer(1, 2f)){
-            float fout = fout(b);
-            BlackHoleUtils.blackHoleUpdate(
-                b.team, b,
-                damageRadius * fout, suctionRadius * fout,
-                b.damage, pierceArmor, buildingDamageMultiplier, bulletDamage * damageMultiplier(b),
-                repel, force, scaledForce, bulletForce, scaledBulletForce
-            );
+        float elapsed = b.timer.getTime(physicsTimer);
+        float strength = BlackHoleScheduler.due(b.x, b.y, elapsed, physicsInterval);
+        if(strength > 0f){
+            BlackHoleField.register(spec(), b.team, b, 0f, 0f, fout(b), b.damage, bulletDamage * damageMultiplier(b), strength);
+            b.timer.reset(physicsTimer, BlackHoleScheduler.carry(elapsed, physicsInterval, strength));
         }
 
         if(!headless && b.data instanceof SoundLoop loop){
@@ -109,9 +130,14 @@ public class BlackHoleBulletType extends BulletType{
         super.updateTrailEffects(b);
 
         if(swirlInterval > 0f && b.time <= b.lifetime - swirlEffect.lifetime){
-            if(b.timer(0, swirlInterval)){
-                for(int i = 0; i < swirlEffects; i++){
-                    swirlEffect.at(b.x, b.y, suctionRadius * (counterClockwise ? -1f : 1f) * fout(b), teamColor(b, color), b);
+            //Low priority holes spawn less often, and holes without a share not at all
+            float share = SwirlBudget.share(b.x, b.y, suctionRadius * fout(b));
+            if(b.timer(0, share > 0f ? swirlInterval / share : swirlInterval)){
+                SwirlBudget.suppress(swirlEffects, share);
+                if(share > 0f){
+                    for(int i = 0; i < swirlEffects; i++){
+                        swirlEffect.at(b.x, b.y, suctionRadius * (counterClockwise ? -1f : 1f) * fout(b), teamColor(b, color), b);
+                    }
                 }
             }
         }
@@ -120,6 +146,7 @@ public class BlackHoleBulletType extends BulletType{
     @Override
     public void draw(Bullet b){
         float fout = fout(b);
+        BlackHoleStats.hole(Source.bullet);
         BlackHoleRenderer.addBlackHole(
             b.x, b.y,
             horizonRadius * fout, lensingRadius * fout,
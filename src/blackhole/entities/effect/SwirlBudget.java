@@ -0,0 +1,92 @@
+package blackhole.entities.effect;
+
+import arc.math.*;
+import arc.math.geom.*;
+import arc.util.*;
+
+import static arc.Core.*;
+import static mindustry.Vars.*;
+
+/**
+ * Shares a global swirl particle budget between black holes.
+ * Every visible hole gets a full share until the budget starts filling up. Past that, shares shrink towards zero,
+ * faster for holes that are small on screen or far from the center of the view.
+ * Swirl spawn intervals are divided by the share, so low priority holes spawn less often, and holes with no share don't spawn at all.
+ */
+public class SwirlBudget{
+    /** If false, every hole always gets a full share. */
+    public static boolean enabled = true;
+    /** Most swirl particles alive at once. */
+    public static int maxParticles = 1500;
+    /** Holes at least this large on screen, in pixels, get full size priority. */
+    public static float fullSizePixels = 80f;
+    /** Priority lost by a hole at the edge of the view, compared to one at the center. */
+    public static float edgePenalty = 0.5f;
+    /** Once the budget is this full, shares start shrinking towards zero and priority starts to matter. */
+    public static float pressureStart = 0.5f;
+
+    /** Live particles spawned as separate entities. Emitter particles are counted by {@link SwirlEmitter}. */
+    static int liveEntities;
+    private static float suppressed;
+
+    /** @return Number of swirl particles that weren't spawned because of the budget. */
+    public static int suppressed(){
+        return (int)suppressed;
+    }
+
+    /** @return Number of live swirl particles counted against the budget. */
+    public static int live(){
+        return liveEntities + SwirlEmitter.particles();
+    }
+
+    /**
+     * @param radius radius the swirls spawn in
+     * @return Share of its swirl spawns the hole may spawn this frame.
+     */
+    public static float share(float x, float y, float radius){
+        if(!enabled || headless) return 1f;
+
+        Rect view = camera.bounds(Tmp.r1);
+        float priority = priority(x, y, radius, view.x, view.y, view.width, view.height, graphics.getWidth() / view.width);
+        return share(priority, live(), maxParticles);
+    }
+
+    /**
+     * @param pixelsPerUnit screen pixels per world unit
+     * @return Priority from 0 to 1 of a hole. Holes that don't touch the view or are under a pixel large have none.
+     */
+    public static float priority(float x, float y, float radius, float camX, float camY, float camW, float camH, float pixelsPerUnit){
+        float pixels = radius * pixelsPerUnit;
+        if(pixels < 1f) return 0f;
+
+        float dx = x - Mathf.clamp(x, camX, camX + camW), dy = y - Mathf.clamp(y, camY, camY + camH);
+        if(dx * dx + dy * dy > radius * radius) return 0f;
+
+        float size = Math.min(pixels / fullSizePixels, 1f);
+        float halfDiagonal = Mathf.dst(camW, camH) / 2f;
+        float distance = Mathf.clamp(Mathf.dst(x, y, camX + camW / 2f, camY + camH / 2f) / halfDiagonal);
+        return size * (1f - distance * edgePenalty);
+    }
+
+    /** @return Share of a hole with the given priority, while the given number of particles are alive. */
+    public static float share(float priority, int live, int maxParticles){
+        if(priority <= 0f) return 0f;
+
+        float load = maxParticles <= 0 ? 1f : (float)live / maxParticles;
+        if(load >= 1f) return 0f;
+        if(load <= pressureStart) return 1f;
+
+        //Goes from 1 when pressure starts to 0 when the budget is full. Priority is blended in as it drops, so shares don't jump when pressure starts.
+        float room = (1f - load) / (1f - pressureStart);
+        return Mathf.clamp(room * Mathf.lerp(Math.min(priority, 1f), 1f, room));
+    }
+
+    /**
+     * Records the particles a hole skipped.
+     * @param requested particles spawned at each interval without the budget
+     * @param share the hole's share when it spawned, or 0 if it didn't spawn
+     */
+    public static void suppress(int requested, float share){
+        suppressed += share <= 0f ? requested : requested * (1f / share - 1f);
+    }
+}
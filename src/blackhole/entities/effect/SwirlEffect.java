@@ -2,6 +2,7 @@ package blackhole.entities.effect;
 
 import arc.graphics.*;
 import arc.math.*;
+import arc.struct.*;
 import arc.util.*;
 import arc.util.pooling.*;
 import blackhole.graphics.*;
@@ -40,6 +41,24 @@ public class SwirlEffect extends Effect{
     public Interp spinterp = Interp.pow3Out;
     /** Overrides spin direction from radius provided by bullet rotation. >1 for clockwise, <1 for counter-clockwise */
     public float spinDirectionOverride = 0f;
+    /** How trails emit light. Merged and capped lights submit far fewer lights than one per segment. */
+    public LightTrail.LightMode lightMode = LightTrail.LightMode.capped;
+    /** Most lights per trail in {@link LightTrail.LightMode#capped} mode. */
+    public int maxLights = 3;
+    /** If true, particles are kept in a {@link SwirlEmitter} per parent instead of being spawned as separate entities. */
+    public boolean useEmitters = true;
+    /** How many trails are created ahead of time by {@link #prewarm()}. */
+    public int prewarmTrails = 128;
+
+    /** Total number of trails created by every swirl effect. Stays flat once the pools are warm. */
+    public static int trailsAllocated;
+
+    /** Emitters of this effect by the id of their parent, and the emitter for particles without one. Pooled parents get a new id every time they're reused. */
+    final IntMap<SwirlEmitter> emitters = new IntMap<>();
+    @Nullable SwirlEmitter looseEmitter;
+
+    /** Trails are reused between particles. Created on first use, since length and light opacity can be changed after construction. */
+    protected @Nullable TrailPool trails;
 
     {
         lifetime = 90f;
@@ -92,37 +111,94 @@ public class SwirlEffect extends Effect{
         clip = Math.max(clip, maxDst * 2f);
     }
 
+    /** Fills the trail pool so particles don't allocate during the first fights. */
+    public void prewarm(){
+        trails().prewarm(prewarmTrails);
+    }
+
+    /** Prewarms every swirl effect. */
+    public static void prewarmAll(){
+        for(Effect effect : Effect.all){
+            if(effect instanceof SwirlEffect swirl) swirl.prewarm();
+        }
+    }
+
+    /** @return Number of trails in use by particles of every swirl effect. */
+    public static int usedTrails(){
+        int used = 0;
+        for(Effect effect : Effect.all){
+            if(effect instanceof SwirlEffect swirl && swirl.trails != null) used += swirl.trails.getUsed();
+        }
+        return used;
+    }
+
+    /** @return Number of trails sitting free in the pools of every swirl effect. */
+    public static int freeTrails(){
+        int free = 0;
+        for(Effect effect : Effect.all){
+            if(effect instanceof SwirlEffect swirl && swirl.trails != null) free += swirl.trails.getFree();
+        }
+        return free;
+    }
+
+    /** Takes back every trail of every swirl effect, including ones still held by particles that were never removed. */
+    public static void reclaimAll(){
+        for(Effect effect : Effect.all){
+            if(effect instanceof SwirlEffect swirl && swirl.trails != null) swirl.trails.reclaim();
+        }
+    }
+
+    public TrailPool trails(){
+        if(trails == null){
+            trails = new TrailPool(length, lightOpacity);
+        }else if(trails.length != length || trails.lightOpacity != lightOpacity){
+            //Free trails were made for the old values
+            trails.clear();
+            trails.length = length;
+            trails.lightOpacity = lightOpacity;
+        }
+        return trails;
+    }
+
     @Override
     public void render(EffectContainer e){
-        float lifetime = e.lifetime - length;
         float dst;
         if(minDst < 0 || maxDst < 0){
             dst = Math.abs(e.rotation);
         }else{
             dst = Mathf.randomSeed(e.id, minDst, maxDst);
         }
-        float l = Mathf.clamp(e.time / lifetime);
-        if(colorFrom != null || colorTo != null){
-            Tmp.c1.set(colorFrom == null ? e.color : colorFrom).lerp(colorTo == null ? e.color : colorTo, l);
-        }else{
-            Tmp.c1.set(e.color);
-        }
 
-        float width = Mathf.clamp(e.time / (e.lifetime - length)) * this.width;
         float dir = spinDirectionOverride != 0 ? Mathf.sign(spinDirectionOverride) : Mathf.sign(e.rotation);
         float baseRot = Mathf.randomSeed(e.id + 1, 360f), addRot = Mathf.randomSeed(e.id + 2, minRot, maxRot) * dir;
 
         Trail trail = (Trail)e.data;
         if(!state.isPaused()){
-            float f = 1f - (e.time / lifetime);
-            if(f > 0f){
-                v1.trns(baseRot + addRot * spinterp.apply(f), Mathf.maxZero(dst * fallterp.apply(f))).add(e.x, e.y);
-                trail.update(v1.x, v1.y);
-            }else{
-                trail.shorten();
-            }
+            updateTrail(trail, e.x, e.y, e.time, e.lifetime, dst, baseRot, addRot);
         }
+        drawTrail(trail, e.time, e.lifetime, e.color);
+    }
 
+    /** Moves a particle's trail along its path. */
+    public void updateTrail(Trail trail, float x, float y, float time, float lifetime, float dst, float baseRot, float addRot){
+        float f = 1f - (time / (lifetime - length));
+        if(f > 0f){
+            v1.trns(baseRot + addRot * spinterp.apply(f), Mathf.maxZero(dst * fallterp.apply(f))).add(x, y);
+            trail.update(v1.x, v1.y);
+        }else{
+            trail.shorten();
+        }
+    }
+
+    public void drawTrail(Trail trail, float time, float lifetime, Color color){
+        float l = Mathf.clamp(time / (lifetime - length));
+        if(colorFrom != null || colorTo != null){
+            Tmp.c1.set(colorFrom == null ? color : colorFrom).lerp(colorTo == null ? color : colorTo, l);
+        }else{
+            Tmp.c1.set(color);
+        }
+
+        float width = l * this.width;
         trail.drawCap(Tmp.c1, width);
 
         if(trail instanceof LightTrail lightTrail){
@@ -132,20 +208,107 @@ public class SwirlEffect extends Effect{
         }
     }
 
+    /** @return A trail from the pool, set up for this effect. */
+    public PooledTrail obtainTrail(){
+        if(length < 1 || width <= 0f){
+            throw new IllegalArgumentException("Swirl trails need a length of at least 1 and a positive width, got " + length + " and " + width);
+        }
+
+        PooledTrail trail = trails().obtain();
+        if(trail instanceof LightTrail light){
+            light.lightMode = lightMode;
+            light.maxLights = maxLights;
+        }
+        return trail;
+    }
+
     @Override
     protected void add(float x, float y, float rotation, Color color, Object data){
+        Posc parent = followParent && data instanceof Posc p ? p : null;
+        if(useEmitters && SwirlEmitter.initialized()){
+            SwirlEmitter.get(this, parent).spawn(x, y, baseRotation + rotation, color);
+            return;
+        }
+
         BlackHoleEffectState entity = BlackHoleEffectState.create();
         entity.effect = this;
         entity.rotation = baseRotation + rotation;
         entity.lifetime = lifetime;
         entity.set(x, y);
         entity.color.set(color);
-        if(followParent && data instanceof Posc p){
-            entity.parent = p;
+        if(parent != null){
+            entity.parent = parent;
             entity.rotWithParent = rotWithParent;
         }
-        entity.data = lightOpacity > 0f ? new LightTrail(length, lightOpacity) : new Trail(length);
+        entity.data = obtainTrail();
         entity.add();
+        SwirlBudget.liveEntities++;
+    }
+
+    /** Pool that remembers which trails are in use, so they can all be taken back at once and stray frees are ignored. */
+    public static class TrailPool extends Pool<PooledTrail>{
+        public int length;
+        public float lightOpacity;
+        /** Trails handed out and not yet freed. */
+        final ObjectSet<PooledTrail> used = new ObjectSet<>();
+
+        public TrailPool(int length, float lightOpacity){
+            this.length = length;
+            this.lightOpacity = lightOpacity;
+        }
+
+        @Override
+        protected PooledTrail newObject(){
+            trailsAllocated++;
+            return lightOpacity > 0f ? new LightTrail(length, lightOpacity) : new PooledTrail(length);
+        }
+
+        @Override
+        public PooledTrail obtain(){
+            PooledTrail trail = super.obtain();
+            if(trail instanceof LightTrail light) light.lightOpacity = lightOpacity;
+            used.add(trail);
+            return trail;
+        }
+
+        @Override
+        public void free(PooledTrail trail){
+            release(trail);
+        }
+
+        /**
+         * Frees a trail if it's in use. Trails made before the length or light opacity changed are dropped instead of kept.
+         * @return Whether the trail was in use, as opposed to already freed or reclaimed.
+         */
+        public boolean release(PooledTrail trail){
+            if(!used.remove(trail)) return false;
+            if(fits(trail)) super.free(trail);
+            return true;
+        }
+
+        /** Frees every trail in use. */
+        public void reclaim(){
+            for(PooledTrail trail : used){
+                super.free(trail);
+            }
+            used.clear();
+        }
+
+        /** @return Number of trails in use. */
+        public int getUsed(){
+            return used.size;
+        }
+
+        boolean fits(PooledTrail trail){
+            return trail.length == length && (trail instanceof LightTrail) == (lightOpacity > 0f);
+        }
+
+        /** Creates trails until at least the given amount are free. */
+        public void prewarm(int amount){
+            while(getFree() < amount){
+                super.free(newObject());
+            }
+        }
     }
 
     public static class BlackHoleEffectState extends EffectState{
@@ -153,6 +316,16 @@ public class SwirlEffect extends Effect{
             return Pools.obtain(BlackHoleEffectState.class, BlackHoleEffectState::new);
         }
 
+        @Override
+        public void reset(){
+            //Hand the trail back before the effect and data are cleared
+            //Trails reclaimed on reset were already counted out
+            if(effect instanceof SwirlEffect swirl && data instanceof PooledTrail trail && swirl.trails().release(trail)){
+                SwirlBudget.liveEntities--;
+            }
+            super.reset();
+        }
+
         @Override
         public void add(){
             if(!added){
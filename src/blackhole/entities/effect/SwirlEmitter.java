@@ -0,0 +1,274 @@
+package blackhole.entities.effect;
+
+import arc.*;
+import arc.graphics.*;
+import arc.graphics.g2d.*;
+import arc.math.*;
+import arc.math.geom.*;
+import arc.struct.*;
+import arc.util.*;
+import arc.util.pooling.*;
+import arc.util.pooling.Pool.*;
+import blackhole.graphics.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+import mindustry.world.blocks.defense.turrets.BaseTurret.*;
+
+import java.util.*;
+
+import static arc.Core.*;
+import static mindustry.Vars.*;
+
+/**
+ * Holds every particle of a {@link SwirlEffect} around one parent in flat arrays, instead of one entity per particle.
+ * Random parameters are rolled once on spawn, and all particles are updated and drawn in a single loop.
+ * Particles advance when they're drawn, like the trails of effect entities, so trails move once per frame.
+ */
+public class SwirlEmitter implements Poolable{
+    private static final Seq<SwirlEmitter> active = new Seq<>(SwirlEmitter.class);
+    private static final Rect viewBounds = new Rect();
+    private static boolean initialized;
+    private static int live;
+
+    public SwirlEffect effect;
+    /** Parent the particles follow. Set to null once it's removed, and the particles stay where they are. */
+    public @Nullable Posc parent;
+    /** Id of the parent when the emitter was created, which changes if a pooled parent is reused. */
+    private int parentId;
+    /** Number of live particles. */
+    public int size;
+
+    /** Per particle: time alive, current position, offset from the parent and the parent's rotation when spawned. */
+    private float[] time = new float[8], x = new float[8], y = new float[8], offsetX = new float[8], offsetY = new float[8], offsetPos = new float[8];
+    /** Per particle: starting distance from the center, starting angle and how far it revolves. */
+    private float[] dst = new float[8], baseRot = new float[8], addRot = new float[8];
+    /** r, g, b and a of each particle. */
+    private float[] colors = new float[8 * 4];
+    private PooledTrail[] trails = new PooledTrail[8];
+    private final Color color = new Color();
+
+    public static void init(){
+        if(initialized) return;
+        initialized = true;
+
+        Events.run(Trigger.draw, SwirlEmitter::drawAll);
+        Events.on(ResetEvent.class, e -> {
+            clearAll();
+            //Effect entities can be cleared without being removed, which would keep their trails forever
+            SwirlEffect.reclaimAll();
+            SwirlBudget.liveEntities = 0;
+        });
+    }
+
+    public static boolean initialized(){
+        return initialized;
+    }
+
+    /** @return The emitter holding the effect's particles around the parent, created if there is none. */
+    public static SwirlEmitter get(SwirlEffect effect, @Nullable Posc parent){
+        SwirlEmitter emitter = parent == null ? effect.looseEmitter : effect.emitters.get(parent.id());
+        if(emitter == null){
+            emitter = Pools.obtain(SwirlEmitter.class, SwirlEmitter::new);
+            emitter.effect = effect;
+            emitter.parent = parent;
+            if(parent == null){
+                effect.looseEmitter = emitter;
+            }else{
+                emitter.parentId = parent.id();
+                effect.emitters.put(emitter.parentId, emitter);
+            }
+            active.add(emitter);
+        }
+        return emitter;
+    }
+
+    /** @return Number of particles alive across every emitter. */
+    public static int particles(){
+        return live;
+    }
+
+    /** @return Number of emitters with live particles. */
+    public static int emitters(){
+        return active.size;
+    }
+
+    private static void updateAll(){
+        for(int i = 0; i < active.size; i++){
+            SwirlEmitter emitter = active.items[i];
+            emitter.update();
+            if(emitter.size == 0){
+                emitter.unregister();
+                active.remove(i--);
+                Pools.free(emitter);
+            }
+        }
+    }
+
+    private static void drawAll(){
+        if(!state.isPaused()) updateAll();
+
+        camera.bounds(viewBounds);
+        for(int i = 0; i < active.size; i++){
+            active.items[i].draw();
+        }
+    }
+
+    private static void clearAll(){
+        for(int i = 0; i < active.size; i++){
+            SwirlEmitter emitter = active.items[i];
+            emitter.unregister();
+            Pools.free(emitter);
+        }
+        active.clear();
+    }
+
+    /**
+     * Spawns a particle, the same way {@link SwirlEffect} spawns an entity.
+     * @param rotation radius the particle falls from. The sign decides the spin direction.
+     */
+    public void spawn(float x, float y, float rotation, Color color){
+        if(size >= time.length) grow();
+
+        SwirlEffect e = effect;
+        int i = size++;
+        live++;
+        this.time[i] = 0f;
+        this.x[i] = x;
+        this.y[i] = y;
+        dst[i] = e.minDst < 0 || e.maxDst < 0 ? Math.abs(rotation) : Mathf.random(e.minDst, e.maxDst);
+        float dir = e.spinDirectionOverride != 0 ? Mathf.sign(e.spinDirectionOverride) : Mathf.sign(rotation);
+        baseRot[i] = Mathf.random(360f);
+        addRot[i] = Mathf.random(e.minRot, e.maxRot) * dir;
+
+        int c = i * 4;
+        colors[c] = color.r;
+        colors[c + 1] = color.g;
+        colors[c + 2] = color.b;
+        colors[c + 3] = color.a;
+
+        if(parent != null){
+            offsetX[i] = x - parent.x();
+            offsetY[i] = y - parent.y();
+            float parentRotation = parentRotation();
+            offsetPos[i] = Float.isNaN(parentRotation) ? 0f : -parentRotation;
+        }
+        trails[i] = e.obtainTrail();
+    }
+
+    /** Advances every particle, removing the ones that have run out of time. Particles keep their spawn order. */
+    public void update(){
+        if(parent != null && (!parent.isAdded() || parent.id() != parentId)){
+            //Let the particles finish where they are, and don't take particles for whatever reuses the parent
+            unregister();
+            parent = null;
+        }
+
+        SwirlEffect e = effect;
+        float lifetime = e.lifetime;
+        boolean follow = parent != null;
+        float px = follow ? parent.x() : 0f, py = follow ? parent.y() : 0f;
+        float parentRotation = follow ? parentRotation() : Float.NaN;
+        boolean rotate = !Float.isNaN(parentRotation);
+
+        int out = 0;
+        for(int i = 0; i < size; i++){
+            float t = Math.min(time[i] + Time.delta, lifetime);
+            if(t >= lifetime){
+                e.trails().free(trails[i]);
+                trails[i] = null;
+                continue;
+            }
+
+            if(follow){
+                if(rotate){
+                    x[i] = px + Angles.trnsx(parentRotation + offsetPos[i], offsetX[i], offsetY[i]);
+                    y[i] = py + Angles.trnsy(parentRotation + offsetPos[i], offsetX[i], offsetY[i]);
+                }else{
+                    x[i] = px + offsetX[i];
+                    y[i] = py + offsetY[i];
+                }
+            }
+            e.updateTrail(trails[i], x[i], y[i], t, lifetime, dst[i], baseRot[i], addRot[i]);
+
+            if(out != i) move(i, out);
+            time[out] = t;
+            out++;
+        }
+
+        Arrays.fill(trails, out, size, null);
+        live -= size - out;
+        size = out;
+    }
+
+    public void draw(){
+        SwirlEffect e = effect;
+        float z = Draw.z();
+        Draw.z(e.layer);
+        for(int i = 0; i < size; i++){
+            if(!viewBounds.overlaps(x[i] - e.clip / 2f, y[i] - e.clip / 2f, e.clip, e.clip)) continue;
+
+            int c = i * 4;
+            color.set(colors[c], colors[c + 1], colors[c + 2], colors[c + 3]);
+            e.drawTrail(trails[i], time[i], e.lifetime, color);
+        }
+        Draw.z(z);
+    }
+
+    private void unregister(){
+        if(effect.looseEmitter == this){
+            effect.looseEmitter = null;
+        }else if(parent != null && effect.emitters.get(parentId) == this){
+            effect.emitters.remove(parentId);
+        }
+    }
+
+    /** @return The parent's rotation if particles rotate with it, otherwise NaN. */
+    private float parentRotation(){
+        if(!effect.rotWithParent) return Float.NaN;
+        if(parent instanceof Rotc r) return r.rotation();
+        if(parent instanceof BaseTurretBuild build) return build.rotation;
+        return Float.NaN;
+    }
+
+    private void move(int from, int to){
+        x[to] = x[from];
+        y[to] = y[from];
+        offsetX[to] = offsetX[from];
+        offsetY[to] = offsetY[from];
+        offsetPos[to] = offsetPos[from];
+        dst[to] = dst[from];
+        baseRot[to] = baseRot[from];
+        addRot[to] = addRot[from];
+        System.arraycopy(colors, from * 4, colors, to * 4, 4);
+        trails[to] = trails[from];
+    }
+
+    private void grow(){
+        int capacity = time.length * 2;
+        time = Arrays.copyOf(time, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        offsetX = Arrays.copyOf(offsetX, capacity);
+        offsetY = Arrays.copyOf(offsetY, capacity);
+        offsetPos = Arrays.copyOf(offsetPos, capacity);
+        dst = Arrays.copyOf(dst, capacity);
+        baseRot = Arrays.copyOf(baseRot, capacity);
+        addRot = Arrays.copyOf(addRot, capacity);
+        colors = Arrays.copyOf(colors, capacity * 4);
+        trails = Arrays.copyOf(trails, capacity);
+    }
+
+    @Override
+    public void reset(){
+        if(effect != null){
+            for(int i = 0; i < size; i++){
+                effect.trails().free(trails[i]);
+            }
+        }
+        Arrays.fill(trails, 0, size, null);
+        live -= size;
+        size = 0;
+        effect = null;
+        parent = null;
+    }
+}
@@ -4,6 +4,8 @@ import arc.graphics.*;
 import arc.math.*;
 import arc.util.*;
 import blackhole.graphics.*;
+import blackhole.utils.*;
+import blackhole.utils.BlackHoleStats.*;
 import mindustry.entities.part.*;
 import mindustry.graphics.*;
 
@@ -45,6 +47,7 @@ public class BlackHolePart extends DrawPart{
             Tmp.c1.set(color);
             if(colorTo != null) Tmp.c1.lerp(colorTo, prog);
 
+            BlackHoleStats.hole(Source.part);
             BlackHoleRenderer.addBlackHole(rx, ry, Mathf.lerp(size, sizeTo, sclProg), Mathf.lerp(edge, edgeTo, sclProg), Tmp.c1);
         }
     }
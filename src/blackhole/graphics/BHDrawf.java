@@ -1,31 +1,51 @@
 package blackhole.graphics;
 
+import arc.*;
 import arc.graphics.*;
 import arc.graphics.g2d.*;
-import arc.util.*;
+import arc.struct.*;
 import mindustry.gen.*;
 
 import static arc.math.Mathf.*;
 
 public class BHDrawf{
+    /** Screen length of each edge of a star's outline, in pixels. */
+    public static float starSegmentLength = 6f;
+    public static int minStarSides = 8, maxStarSides = 256;
+
+    /** Unit star outlines by side count, as x and y pairs. */
+    private static final IntMap<float[]> starOutlines = new IntMap<>();
+
     public static Color teamColor(Teamc entity, Color color){
         return color == null ? entity.team().color : color;
     }
 
     public static void drawStar(float x, float y, float w, float h, float angleOffset, float centerColor, float edgeColor){
-        int sides = mul4(Lines.circleVertices(w + h));
-        float space = 360f / sides;
+        drawStar(x, y, w, h, angleOffset, centerColor, edgeColor, starSides(Math.max(w, h) * Core.graphics.getWidth() / Core.camera.width));
+    }
+
+    /** @param sides number of sides, from {@link #starSides(float)} */
+    public static void drawStar(float x, float y, float w, float h, float angleOffset, float centerColor, float edgeColor, int sides){
+        float[] outline = starOutline(sides);
+        float cos = cosDeg(angleOffset), sin = sinDeg(angleOffset);
+
+        //Outline points are scaled, rotated and moved into place, ending on the first point again.
+        float px = outline[0] * w, py = outline[1] * h;
+        float x1 = x + px * cos - py * sin, y1 = y + px * sin + py * cos;
+        for(int i = 1; i <= sides; i++){
+            int o = (i % sides) * 2;
+            px = outline[o] * w;
+            py = outline[o + 1] * h;
+            float x2 = x + px * cos - py * sin, y2 = y + px * sin + py * cos;
 
-        for(int i = 0; i < sides; i++){
-            float t1 = i * space, t2 = (i + 1) * space;
-            Tmp.v1.trns(t1, circleStarPoint(t1)).scl(w, h).rotate(angleOffset).add(x, y);
-            Tmp.v2.trns(t2, circleStarPoint(t2)).scl(w, h).rotate(angleOffset).add(x, y);
             Fill.quad(
                 x, y, centerColor,
                 x, y, centerColor,
-                Tmp.v1.x, Tmp.v1.y, edgeColor,
-                Tmp.v2.x, Tmp.v2.y, edgeColor
+                x1, y1, edgeColor,
+                x2, y2, edgeColor
             );
+            x1 = x2;
+            y1 = y2;
         }
     }
 
@@ -33,6 +53,31 @@ public class BHDrawf{
         drawStar(x, y, w, h, 0f, centerColor, edgeColor);
     }
 
+    /**
+     * @param screenRadius larger radius of the star on screen, in pixels
+     * @return Number of sides to draw the star with. Always a multiple of 4 so every point of the star lands on a vertex.
+     */
+    public static int starSides(float screenRadius){
+        int sides = (int)Math.ceil(PI2 * screenRadius / starSegmentLength);
+        return mul4(clamp(sides, minStarSides, maxStarSides));
+    }
+
+    /** @return Outline of a star with a radius of 1, as x and y pairs. Cached by side count. */
+    public static float[] starOutline(int sides){
+        float[] outline = starOutlines.get(sides);
+        if(outline == null){
+            outline = new float[sides * 2];
+            float space = 360f / sides;
+            for(int i = 0; i < sides; i++){
+                float t = i * space, r = circleStarPoint(t);
+                outline[i * 2] = cosDeg(t) * r;
+                outline[i * 2 + 1] = sinDeg(t) * r;
+            }
+            starOutlines.put(sides, outline);
+        }
+        return outline;
+    }
+
     public static float circleStarPoint(float theta){
         theta = mod(theta, 90f);
         theta *= degRad;
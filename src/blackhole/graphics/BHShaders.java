@@ -1,40 +1,243 @@
 package blackhole.graphics;
 
 import arc.*;
+import arc.graphics.*;
 import arc.graphics.gl.*;
+import arc.math.*;
+import arc.struct.*;
+import arc.util.*;
 
 import static arc.Core.*;
 import static mindustry.Vars.*;
 
 public class BHShaders{
+    /**
+     * Black hole counts that shaders are compiled for. The rim and composite shaders hold two vec4 uniforms per black hole,
+     * so tiers past the device's fragment uniform limit are never compiled.
+     */
+    public static final int[] tiers = {4, 16, 64, 128, 256, 510};
+    /** How many of the smallest tiers are compiled on load. At least one is always compiled. */
+    public static int preloadTiers = 3;
+    /** Every usable tier that fits this many times the last tick's count is compiled ahead of time by {@link #prepare}. */
+    public static float compileAhead = 2f;
+    /** Uniform vectors reserved for everything but the black hole and color arrays. */
+    public static int reservedUniforms = 16;
+    /** If true and GL 3 is available, black holes are read from a float texture instead of uniform arrays. */
+    public static boolean useDataTexture = true;
+    /** Whether the shaders currently read black holes from the data texture. Decided when the shaders are created. */
+    public static boolean dataTexture;
+    /** How many black holes the data texture can hold. */
+    public static int dataCapacity;
+
+    /** Count of the currently selected tier. */
     public static int maxCount = 4;
-    public static LensingShader lensingShader;
+    /** Shaders of the currently selected tier. */
+    public static LensingShader lensingShader, displacementShader;
     public static RimShader rimShader;
+    /** Lensing with the rims applied in the same pass. */
+    public static CompositeShader compositeShader;
+    /** Applies a reduced resolution displacement map to the scene. Does not depend on the tier. */
+    public static LensingApplyShader lensingApplyShader;
+
+    //Not every GL binding names these
+    private static final int glMaxFragmentUniformVectors = 0x8DFD, glMaxFragmentUniformComponents = 0x8B49;
+
+    private static final ShaderSet[] tierSets = new ShaderSet[tiers.length];
+    private static ShaderSet dataSet;
+    private static int selected;
+    /** Tiers below this fit the uniform limit and haven't failed to compile. */
+    private static int usableTiers = tiers.length;
 
+    /** Compiles the data texture shaders if supported, otherwise the preloaded tiers, and selects the smallest one. Call on load. */
     public static void createBlackHoleShaders(){
-        if(maxCount >= 510) return; //Exceeds maximum number of registers for a single shader
+        if(lensingApplyShader == null) lensingApplyShader = new LensingApplyShader();
+
+        dataTexture = useDataTexture && Core.gl30 != null;
+        if(dataTexture){
+            if(dataSet == null){
+                dataCapacity = BlackHoleData.capacity(Gl.getInt(Gl.maxTextureSize));
+                dataSet = new ShaderSet(dataCapacity, true);
+            }
+            select(0);
+            return;
+        }
+
+        if(lensingShader == null) usableTiers = fittingTiers(uniformVectors());
+        for(int i = 0; i < Mathf.clamp(preloadTiers, 1, tiers.length); i++){
+            if(!compile(i)) break;
+        }
+        if(lensingShader == null) select(0);
+    }
+
+    /** @return Fragment uniform vectors the device supports, or 0 if it doesn't report them. */
+    private static int uniformVectors(){
+        int vectors = Gl.getInt(glMaxFragmentUniformVectors);
+        //Desktop GL without ES 2 compatibility only reports components
+        if(vectors <= 0) vectors = Gl.getInt(glMaxFragmentUniformComponents) / 4;
+        return vectors;
+    }
+
+    /** @return Number of tiers whose shaders fit the uniform limit. The smallest tier is always tried. */
+    static int fittingTiers(int uniformVectors){
+        if(uniformVectors <= 0) return tiers.length;
+
+        int fitting = 1;
+        while(fitting < tiers.length && tiers[fitting] * 2 + reservedUniforms <= uniformVectors) fitting++;
+        return fitting;
+    }
+
+    /**
+     * Selects the smallest compiled tier that fits the count. If none fit, the largest compiled tier is used and any black holes past its count are dropped.
+     * Never compiles anything, so it is safe to call mid-frame.
+     * @return The count of the selected tier.
+     */
+    public static int select(int count){
+        if(dataTexture){
+            use(dataSet);
+            return maxCount;
+        }
+
+        //The smallest tier is always compiled
+        int tier = 0;
+        for(int i = 0; i < tiers.length; i++){
+            if(resident(i)){
+                tier = i;
+                if(tiers[i] >= count) break;
+            }
+        }
+
+        selected = tier;
+        use(tierSets[tier]);
+        return maxCount;
+    }
+
+    private static void use(ShaderSet set){
+        maxCount = set.maxCount;
+        lensingShader = set.lensing;
+        displacementShader = set.displacement;
+        rimShader = set.rim;
+        compositeShader = set.composite;
+    }
+
+    /**
+     * Compiles every missing usable tier up to the one that fits {@link #compileAhead} times the count, in one step.
+     * Call this outside of drawing, such as on update, so compilation never happens mid-frame.
+     */
+    public static void prepare(int count){
+        if(dataTexture) return;
+
+        float ahead = count * compileAhead;
+        for(int i = 0; i < tiers.length; i++){
+            if(!compile(i) || tiers[i] >= ahead) break;
+        }
+    }
+
+    /** Disposes compiled tiers past the preloaded ones, except for the one currently in use. Called when a game is left. */
+    public static void releaseUnused(){
+        for(int i = Math.max(preloadTiers, 1); i < tiers.length; i++){
+            if(i != selected && resident(i)){
+                tierSets[i].dispose();
+                tierSets[i] = null;
+            }
+        }
+    }
+
+    /** Fills the seq with the counts of every tier that is currently compiled. */
+    public static IntSeq residentTiers(IntSeq out){
+        out.clear();
+        if(dataTexture){
+            out.add(dataCapacity);
+            return out;
+        }
+
+        for(int i = 0; i < tiers.length; i++){
+            if(resident(i)) out.add(tiers[i]);
+        }
+        return out;
+    }
+
+    public static boolean resident(int tier){
+        return tierSets[tier] != null;
+    }
+
+    /**
+     * Compiles a tier if it isn't already. If it fails, it and every larger tier are marked unusable, and the largest compiled tier is used instead.
+     * @return Whether the tier is compiled.
+     */
+    private static boolean compile(int tier){
+        if(tier >= usableTiers) return false;
+        if(resident(tier)) return true;
+
+        try{
+            tierSets[tier] = new ShaderSet(tiers[tier], false);
+            return true;
+        }catch(RuntimeException e){
+            //Nothing to fall back to
+            if(tier == 0) throw e;
 
-        if(lensingShader != null){
-            maxCount = Math.min(510, maxCount * 2);
-            lensingShader.dispose();
-            rimShader.dispose();
+            Log.err("Black hole shaders for " + tiers[tier] + " black holes failed to compile, using at most " + tiers[tier - 1] + ".", e);
+            usableTiers = tier;
+            return false;
+        }
+    }
+
+    /** Every shader that depends on the black hole count. */
+    private static class ShaderSet{
+        final int maxCount;
+        LensingShader lensing, displacement;
+        RimShader rim;
+        CompositeShader composite;
+
+        /** Disposes whatever did compile if any of the shaders fail. */
+        ShaderSet(int maxCount, boolean dataTexture){
+            this.maxCount = maxCount;
+
+            String defines = "\n#define MAX_COUNT " + maxCount + "\n" + (dataTexture ? "#define DATA_TEXTURE\n" : "");
+            String oldPrepend = Shader.prependFragmentCode;
+            try{
+                Shader.prependFragmentCode = oldPrepend + defines;
+                lensing = new LensingShader(maxCount, dataTexture, false);
+                rim = new RimShader(maxCount, dataTexture);
+                Shader.prependFragmentCode = oldPrepend + defines + "#define DISPLACEMENT\n";
+                displacement = new LensingShader(maxCount, dataTexture, true);
+                Shader.prependFragmentCode = oldPrepend + defines + "#define COMPOSITE\n";
+                composite = new CompositeShader(maxCount, dataTexture);
+            }catch(RuntimeException e){
+                dispose();
+                throw e;
+            }finally{
+                Shader.prependFragmentCode = oldPrepend;
+            }
         }
 
-        String oldPrepend = Shader.prependFragmentCode;
-        Shader.prependFragmentCode = oldPrepend + "\n#define MAX_COUNT " + maxCount + "\n";
-        lensingShader = new LensingShader();
-        rimShader = new RimShader();
-        Shader.prependFragmentCode = oldPrepend;
+        void dispose(){
+            if(lensing != null) lensing.dispose();
+            if(displacement != null) displacement.dispose();
+            if(rim != null) rim.dispose();
+            if(composite != null) composite.dispose();
+        }
     }
 
-    public static class LensingShader extends Shader{
+    /** Base for shaders that loop over the binned black holes. */
+    public static class BlackHoleShader extends Shader{
+        public final int maxCount;
+        /** Whether black holes are read from the data texture instead of uniform arrays. */
+        public final boolean dataTexture;
         public float[] blackHoles;
+        public int count;
+        /** Texture holding the {@link BlackHoleBins} of the frame. */
+        public Texture bins;
+        public int tilesX, tilesY;
+        /** GL handle and height of the float texture holding the {@link BlackHoleData} of the frame. */
+        public int data, dataHeight;
 
-        LensingShader(){
+        BlackHoleShader(String frag, int maxCount, boolean dataTexture){
             super(
                 files.internal("shaders/screenspace.vert"),
-                tree.get("shaders/gravitationallensing.frag")
+                tree.get("shaders/" + frag)
             );
+            this.maxCount = maxCount;
+            this.dataTexture = dataTexture;
         }
 
         @Override
@@ -42,30 +245,119 @@ public class BHShaders{
             setUniformf("u_campos", Core.camera.position.x - Core.camera.width / 2, Core.camera.position.y - Core.camera.height / 2);
             setUniformf("u_resolution", Core.camera.width, Core.camera.height);
 
-            setUniformi("u_blackholecount", blackHoles.length / 4);
-            setUniform4fv("u_blackholes", blackHoles, 0, blackHoles.length);
+            int count = Math.min(this.count, maxCount);
+            setUniformi("u_blackholecount", count);
+            if(dataTexture){
+                Gl.activeTexture(Gl.texture0 + 2);
+                Gl.bindTexture(Gl.texture2d, data);
+                setUniformi("u_bhdata", 2);
+                setUniformf("u_datasize", BlackHoleData.width, dataHeight);
+            }else{
+                setUniform4fv("u_blackholes", blackHoles, 0, count * 4);
+            }
+
+            bins.bind(1);
+            Gl.activeTexture(Gl.texture0);
+            setUniformi("u_bins", 1);
+            setUniformf("u_binsize", bins.width, bins.height);
+            setUniformf("u_tiles", tilesX, tilesY);
+        }
+
+        /**
+         * @param blackHoles x, y, inRadius and outRadius of each black hole. Only the first count are used.
+         * @param bins texture holding the packed bins of the black holes.
+         */
+        public void set(float[] blackHoles, int count, Texture bins, int tilesX, int tilesY){
+            this.blackHoles = blackHoles;
+            this.count = count;
+            this.bins = bins;
+            this.tilesX = tilesX;
+            this.tilesY = tilesY;
         }
     }
 
-    public static class RimShader extends Shader{
-        public float[] blackHoles;
+    public static class LensingShader extends BlackHoleShader{
+        /** If true, outputs the encoded offset of each pixel instead of the lensed scene. */
+        public final boolean displacement;
+        /** Largest offset that can be encoded, in world units. */
+        public float range;
+
+        LensingShader(int maxCount, boolean dataTexture, boolean displacement){
+            super("gravitationallensing.frag", maxCount, dataTexture);
+            this.displacement = displacement;
+        }
+
+        @Override
+        public void apply(){
+            super.apply();
+            if(displacement) setUniformf("u_range", range);
+        }
+    }
+
+    public static class CompositeShader extends LensingShader{
         public float[] colors;
 
-        RimShader(){
+        CompositeShader(int maxCount, boolean dataTexture){
+            super(maxCount, dataTexture, false);
+        }
+
+        @Override
+        public void apply(){
+            super.apply();
+            if(!dataTexture) setUniform4fv("u_colors", colors, 0, Math.min(count, maxCount) * 4);
+        }
+    }
+
+    /** Offsets the scene using a displacement map rendered at a lower resolution by a displacement {@link LensingShader}. */
+    public static class LensingApplyShader extends Shader{
+        public Texture displacement;
+        public float range;
+        /** Maps world positions to displacement texels, see {@link LensingScale#texelScale} and {@link LensingScale#texelOffset}. */
+        public float texelScaleX, texelScaleY, texelOffsetX, texelOffsetY;
+
+        LensingApplyShader(){
             super(
                 files.internal("shaders/screenspace.vert"),
-                tree.get("shaders/blackholerim.frag")
+                tree.get("shaders/lensingapply.frag")
             );
         }
 
+        /** Sets the displacement map and derives its mapping from the camera. */
+        public void set(Texture displacement, float range, float camX, float camY, float camWidth, float camHeight){
+            this.displacement = displacement;
+            this.range = range;
+            texelScaleX = LensingScale.texelScale(displacement.width, camWidth);
+            texelScaleY = LensingScale.texelScale(displacement.height, camHeight);
+            texelOffsetX = LensingScale.texelOffset(displacement.width, camX, camWidth);
+            texelOffsetY = LensingScale.texelOffset(displacement.height, camY, camHeight);
+        }
+
         @Override
         public void apply(){
             setUniformf("u_campos", Core.camera.position.x - Core.camera.width / 2, Core.camera.position.y - Core.camera.height / 2);
             setUniformf("u_resolution", Core.camera.width, Core.camera.height);
+            setUniformf("u_range", range);
+            setUniformf("u_dispsize", displacement.width, displacement.height);
+            setUniformf("u_texelscale", texelScaleX, texelScaleY);
+            setUniformf("u_texeloffset", texelOffsetX, texelOffsetY);
 
-            setUniformi("u_blackholecount", blackHoles.length / 4);
-            setUniform4fv("u_blackholes", blackHoles, 0, blackHoles.length);
-            setUniform4fv("u_colors", colors, 0, colors.length);
+            displacement.bind(1);
+            Gl.activeTexture(Gl.texture0);
+            setUniformi("u_displacement", 1);
+        }
+    }
+
+    public static class RimShader extends BlackHoleShader{
+        public float[] colors;
+
+        RimShader(int maxCount, boolean dataTexture){
+            super("blackholerim.frag", maxCount, dataTexture);
+        }
+
+        @Override
+        public void apply(){
+            super.apply();
+            if(!dataTexture) setUniform4fv("u_colors", colors, 0, Math.min(count, maxCount) * 4);
         }
     }
 }
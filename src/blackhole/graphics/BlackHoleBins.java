@@ -0,0 +1,88 @@
+package blackhole.graphics;
+
+import arc.math.*;
+
+import java.util.*;
+
+/**
+ * Sorts black holes into a grid of screen tiles so that each pixel only has to check the black holes overlapping its own tile.
+ * Results are stored like a sparse matrix: the black holes of tile t are {@code indices[offsets[t]]} to {@code indices[offsets[t + 1] - 1]}, in ascending order.
+ * Tiles are numbered left to right, bottom to top.
+ */
+public class BlackHoleBins{
+    public int tilesX, tilesY;
+    public int[] offsets = new int[1];
+    public int[] indices = new int[16];
+    /** Total number of entries across all tiles. */
+    public int total;
+
+    /**
+     * @param zones x, y, inRadius and outRadius of each black hole
+     * @param count number of black holes to bin
+     * @param camX world x of the left edge of the view
+     * @param camY world y of the bottom edge of the view
+     * @param camW world width of the view
+     * @param camH world height of the view
+     */
+    public void bin(float[] zones, int count, float camX, float camY, float camW, float camH, int tilesX, int tilesY){
+        this.tilesX = tilesX;
+        this.tilesY = tilesY;
+        int tiles = tilesX * tilesY;
+        if(offsets.length < tiles + 1) offsets = new int[tiles + 1];
+        Arrays.fill(offsets, 0, tiles + 1, 0);
+
+        float tileW = camW / tilesX, tileH = camH / tilesY;
+
+        //Count the black holes in each tile, shifted by one so the prefix sum gives the start of each tile.
+        for(int i = 0; i < count; i++){
+            int z = i * 4;
+            float x = zones[z], y = zones[z + 1], r = zones[z + 3];
+            int x1 = tile(x - r, camX, tileW, tilesX), x2 = tile(x + r, camX, tileW, tilesX);
+            int y1 = tile(y - r, camY, tileH, tilesY), y2 = tile(y + r, camY, tileH, tilesY);
+            for(int tx = x1; tx <= x2; tx++){
+                for(int ty = y1; ty <= y2; ty++){
+                    if(overlaps(x, y, r, camX + tx * tileW, camY + ty * tileH, tileW, tileH)) offsets[tx + ty * tilesX + 1]++;
+                }
+            }
+        }
+
+        for(int t = 0; t < tiles; t++){
+            offsets[t + 1] += offsets[t];
+        }
+        total = offsets[tiles];
+        if(indices.length < total) indices = new int[Mathf.nextPowerOfTwo(total)];
+
+        //Fill each tile, using offsets as a write cursor. Afterwards every offset has moved to the start of the next tile.
+        for(int i = 0; i < count; i++){
+            int z = i * 4;
+            float x = zones[z], y = zones[z + 1], r = zones[z + 3];
+            int x1 = tile(x - r, camX, tileW, tilesX), x2 = tile(x + r, camX, tileW, tilesX);
+            int y1 = tile(y - r, camY, tileH, tilesY), y2 = tile(y + r, camY, tileH, tilesY);
+            for(int tx = x1; tx <= x2; tx++){
+                for(int ty = y1; ty <= y2; ty++){
+                    if(overlaps(x, y, r, camX + tx * tileW, camY + ty * tileH, tileW, tileH)) indices[offsets[tx + ty * tilesX]++] = i;
+                }
+            }
+        }
+
+        for(int t = tiles; t > 0; t--){
+            offsets[t] = offsets[t - 1];
+        }
+        offsets[0] = 0;
+    }
+
+    /** @return Number of black holes in the tile. */
+    public int count(int tile){
+        return offsets[tile + 1] - offsets[tile];
+    }
+
+    static int tile(float pos, float start, float size, int tiles){
+        return Mathf.clamp((int)Math.floor((pos - start) / size), 0, tiles - 1);
+    }
+
+    /** @return Whether the circle touches the rectangle. */
+    static boolean overlaps(float cx, float cy, float r, float x, float y, float w, float h){
+        float dx = cx - Mathf.clamp(cx, x, x + w), dy = cy - Mathf.clamp(cy, y, y + h);
+        return dx * dx + dy * dy <= r * r;
+    }
+}
@@ -0,0 +1,38 @@
+package blackhole.graphics;
+
+import arc.math.*;
+
+/**
+ * Packs black holes into RGBA texels for the float data texture.
+ * Black hole i takes texels 2i (x, y, inRadius, outRadius) and 2i + 1 (r, g, b, a), filling rows of {@link #width} texels.
+ */
+public class BlackHoleData{
+    /** Texels per row. */
+    public static final int width = 1024;
+
+    /** Packed texels, four floats each. Only the first {@link #rows} rows are valid. */
+    public float[] texels = new float[width * 4];
+    public int rows;
+
+    /**
+     * @param zones x, y, inRadius and outRadius of each black hole
+     * @param colors r, g, b and a of each black hole's rim
+     * @return Number of rows used.
+     */
+    public int pack(float[] zones, float[] colors, int count){
+        rows = Math.max(Mathf.ceil(count * 2f / width), 1);
+        if(texels.length < rows * width * 4) texels = new float[Mathf.nextPowerOfTwo(rows) * width * 4];
+
+        for(int i = 0; i < count; i++){
+            int z = i * 4, t = i * 8;
+            System.arraycopy(zones, z, texels, t, 4);
+            System.arraycopy(colors, z, texels, t + 4, 4);
+        }
+        return rows;
+    }
+
+    /** @return How many black holes fit in a texture of the given maximum size. */
+    public static int capacity(int maxTextureSize){
+        return width * maxTextureSize / 2;
+    }
+}
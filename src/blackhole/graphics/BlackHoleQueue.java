@@ -0,0 +1,252 @@
+package blackhole.graphics;
+
+import arc.graphics.*;
+import arc.graphics.g2d.*;
+import arc.math.*;
+import arc.struct.*;
+
+import java.util.*;
+
+/**
+ * Collects the black holes and stars submitted during a frame, culled against the view.
+ * Doesn't touch GL, so the CPU side of rendering can run without a graphics context.
+ */
+public class BlackHoleQueue{
+    public static final int starStride = 7;
+    /** Zone and star arrays start at this capacity and are never shrunk below it. */
+    private static final int minCapacity = 16;
+    /** How many frames the peak zone and star counts are tracked before the arrays are allowed to shrink. */
+    private static final int shrinkWindow = 600;
+
+    /** Zones and stars smaller than this on screen, in pixels, are culled. */
+    public static float minScreenRadius = 1f;
+    /** Zones with centers closer than this on screen, in pixels, are merged by {@link #coalesce()}. */
+    public static float coalesceTolerance = 2f;
+
+    /** x, y, inRadius and outRadius of each zone, laid out for u_blackholes. */
+    public float[] zones = new float[minCapacity * 4];
+    /** r, g, b and a of each zone, laid out for u_colors. */
+    public float[] zoneColors = new float[minCapacity * 4];
+    /** x, y, w, h, angleOffset, inColor and outColor of each star. */
+    public float[] stars = new float[minCapacity * starStride];
+    public int zoneCount, starCount;
+    /** Zones and stars dropped for being off screen or too small this frame. */
+    public int culledZones, culledStars;
+    /** Zones merged into another by {@link #coalesce()} this frame. */
+    public int coalescedZones;
+    /** Counts of the last finished frame. */
+    public int lastZones, lastStars, lastCulledZones, lastCulledStars, lastCoalescedZones;
+
+    private int zonesPeak, starsPeak, shrinkTimer;
+    /** Spatial hash of merged zones: the first zone in each cell, and the next zone in the same cell. */
+    private final IntIntMap cellZones = new IntIntMap();
+    private int[] nextInCell = new int[minCapacity];
+    /** Total weight of the zones merged into each zone so far. */
+    private float[] weights = new float[minCapacity];
+    private float viewX, viewY, viewW = 1f, viewH = 1f, pixelsPerUnit = 1f;
+
+    /**
+     * Sets the view zones and stars are culled against.
+     * @param pixelsPerUnit screen pixels per world unit
+     */
+    public void view(float x, float y, float width, float height, float pixelsPerUnit){
+        viewX = x;
+        viewY = y;
+        viewW = width;
+        viewH = height;
+        this.pixelsPerUnit = pixelsPerUnit;
+    }
+
+    public void addZone(float x, float y, float inRadius, float outRadius, Color color){
+        if(inRadius > outRadius || outRadius <= 0) return;
+        if(!visible(x, y, outRadius, viewX, viewY, viewW, viewH, pixelsPerUnit)){
+            culledZones++;
+            return;
+        }
+        if(zoneCount * 4 >= zones.length){
+            zones = Arrays.copyOf(zones, zones.length * 2);
+            zoneColors = Arrays.copyOf(zoneColors, zoneColors.length * 2);
+        }
+
+        int z = zoneCount * 4;
+        zones[z] = x;
+        zones[z + 1] = y;
+        zones[z + 2] = inRadius;
+        zones[z + 3] = outRadius;
+        zoneColors[z] = color.r;
+        zoneColors[z + 1] = color.g;
+        zoneColors[z + 2] = color.b;
+        zoneColors[z + 3] = 1f;
+
+        zoneCount++;
+    }
+
+    public void addStar(float x, float y, float w, float h, float angleOffset, Color in, Color out){
+        if(w <= 0 || h <= 0) return;
+        //Star points never reach past the larger of the two radii
+        if(!visible(x, y, Math.max(w, h), viewX, viewY, viewW, viewH, pixelsPerUnit)){
+            culledStars++;
+            return;
+        }
+        if(starCount * starStride >= stars.length) stars = Arrays.copyOf(stars, stars.length * 2);
+
+        int s = starCount * starStride;
+        stars[s] = x;
+        stars[s + 1] = y;
+        stars[s + 2] = w;
+        stars[s + 3] = h;
+        stars[s + 4] = angleOffset;
+        stars[s + 5] = in.toFloatBits();
+        stars[s + 6] = out.toFloatBits();
+
+        starCount++;
+    }
+
+    /**
+     * Merges zones whose centers are within {@link #coalesceTolerance} pixels of each other.
+     * Each zone merges into the earliest submitted zone in range, which keeps its center, so the same zones merge the same way every frame.
+     * Merged zones grow to enclose every zone in the group around the kept center, and take a color blended by lensing area.
+     */
+    public void coalesce(){
+        if(zoneCount < 2 || coalesceTolerance <= 0f) return;
+
+        float tolerance = coalesceTolerance / pixelsPerUnit, tolerance2 = tolerance * tolerance;
+        if(nextInCell.length < zoneCount){
+            nextInCell = new int[zones.length / 4];
+            weights = new float[zones.length / 4];
+        }
+        cellZones.clear();
+
+        int out = 0;
+        for(int i = 0; i < zoneCount; i++){
+            int z = i * 4;
+            float x = zones[z], y = zones[z + 1], weight = zones[z + 3] * zones[z + 3];
+            int cx = (int)Math.floor(x / tolerance), cy = (int)Math.floor(y / tolerance);
+
+            //Cells are as large as the tolerance, so anything in range is in a neighboring cell
+            int target = -1;
+            for(int dx = -1; dx <= 1; dx++){
+                for(int dy = -1; dy <= 1; dy++){
+                    for(int t = cellZones.get(cellKey(cx + dx, cy + dy), -1); t != -1; t = nextInCell[t]){
+                        if((target == -1 || t < target) && Mathf.dst2(x, y, zones[t * 4], zones[t * 4 + 1]) <= tolerance2) target = t;
+                    }
+                }
+            }
+
+            if(target == -1){
+                int o = out * 4;
+                System.arraycopy(zones, z, zones, o, 4);
+                System.arraycopy(zoneColors, z, zoneColors, o, 4);
+                weights[out] = weight;
+
+                int key = cellKey(cx, cy);
+                nextInCell[out] = cellZones.get(key, -1);
+                cellZones.put(key, out);
+                out++;
+            }else{
+                int t = target * 4;
+                float dst = Mathf.dst(x, y, zones[t], zones[t + 1]);
+                zones[t + 2] = Math.max(zones[t + 2], dst + zones[z + 2]);
+                zones[t + 3] = Math.max(zones[t + 3], dst + zones[z + 3]);
+
+                weights[target] += weight;
+                float blend = weight / weights[target];
+                for(int c = 0; c < 3; c++){
+                    zoneColors[t + c] = Mathf.lerp(zoneColors[t + c], zoneColors[z + c], blend);
+                }
+                coalescedZones++;
+            }
+        }
+        zoneCount = out;
+    }
+
+    private static int cellKey(int x, int y){
+        return (x & 0xFFFF) | (y << 16);
+    }
+
+    /** Draws the horizon of every zone in black. */
+    public void drawHorizons(){
+        Draw.color(Color.black);
+        for(int i = 0; i < zoneCount; i++){
+            int z = i * 4;
+            Fill.circle(zones[z], zones[z + 1], zones[z + 2]);
+        }
+        Draw.color();
+    }
+
+    /** Draws the glowing rims as rings of quads, fading out from the horizon. */
+    public void drawRims(){
+        for(int i = 0; i < zoneCount; i++){
+            int z = i * 4;
+            float x = zones[z], y = zones[z + 1], inRadius = zones[z + 2], outRadius = zones[z + 3];
+            float rad = Mathf.lerp(inRadius, outRadius, 0.125f);
+            int vert = Lines.circleVertices(rad);
+            float space = 360f / vert;
+
+            float c1 = Color.toFloatBits(zoneColors[z], zoneColors[z + 1], zoneColors[z + 2], 1f);
+            float c2 = Color.toFloatBits(zoneColors[z], zoneColors[z + 1], zoneColors[z + 2], 0f);
+
+            for(int j = 0; j < vert; j++){
+                float sin1 = Mathf.sinDeg(j * space), sin2 = Mathf.sinDeg((j + 1) * space);
+                float cos1 = Mathf.cosDeg(j * space), cos2 = Mathf.cosDeg((j + 1) * space);
+
+                Fill.quad(
+                    x + cos1 * inRadius, y + sin1 * inRadius, c1,
+                    x + cos2 * inRadius, y + sin2 * inRadius, c1,
+                    x + cos2 * rad, y + sin2 * rad, c2,
+                    x + cos1 * rad, y + sin1 * rad, c2
+                );
+            }
+        }
+    }
+
+    public void drawStars(){
+        for(int i = 0; i < starCount; i++){
+            int s = i * starStride;
+            float w = stars[s + 2], h = stars[s + 3];
+            BHDrawf.drawStar(stars[s], stars[s + 1], w, h, stars[s + 4], stars[s + 5], stars[s + 6], BHDrawf.starSides(Math.max(w, h) * pixelsPerUnit));
+        }
+    }
+
+    /** Resets the zones and stars for the next frame. Arrays that have been much larger than needed for a while are shrunk. */
+    public void endFrame(){
+        lastZones = zoneCount;
+        lastStars = starCount;
+        lastCulledZones = culledZones;
+        lastCulledStars = culledStars;
+        lastCoalescedZones = coalescedZones;
+        culledZones = culledStars = coalescedZones = 0;
+        zonesPeak = Math.max(zonesPeak, zoneCount);
+        starsPeak = Math.max(starsPeak, starCount);
+        zoneCount = 0;
+        starCount = 0;
+
+        if(++shrinkTimer < shrinkWindow) return;
+
+        int zoneCapacity = shrunkCapacity(zones.length / 4, zonesPeak);
+        if(zoneCapacity != zones.length / 4){
+            zones = new float[zoneCapacity * 4];
+            zoneColors = new float[zoneCapacity * 4];
+        }
+        int starCapacity = shrunkCapacity(stars.length / starStride, starsPeak);
+        if(starCapacity != stars.length / starStride){
+            stars = new float[starCapacity * starStride];
+        }
+
+        zonesPeak = starsPeak = shrinkTimer = 0;
+    }
+
+    /** @return The capacity to shrink to, or the current capacity if it is not more than 4x larger than the peak. */
+    static int shrunkCapacity(int capacity, int peak){
+        int target = Math.max(Mathf.nextPowerOfTwo(peak * 2), minCapacity);
+        return capacity > target * 2 ? target : capacity;
+    }
+
+    /**
+     * @param pixelsPerUnit screen pixels per world unit
+     * @return Whether a circle touches the view and is at least {@link #minScreenRadius} pixels large on screen.
+     */
+    static boolean visible(float x, float y, float radius, float camX, float camY, float camW, float camH, float pixelsPerUnit){
+        return radius * pixelsPerUnit >= minScreenRadius && BlackHoleBins.overlaps(x, y, radius, camX, camY, camW, camH);
+    }
+}
@@ -2,14 +2,15 @@ package blackhole.graphics;
 
 import arc.*;
 import arc.graphics.*;
+import arc.graphics.Texture.*;
 import arc.graphics.g2d.*;
 import arc.graphics.gl.*;
 import arc.math.*;
-import arc.struct.*;
-import arc.util.*;
 import mindustry.game.EventType.*;
 import mindustry.graphics.*;
 
+import java.nio.*;
+
 import static arc.Core.*;
 import static mindustry.Vars.*;
 
@@ -18,19 +19,46 @@ import static mindustry.Vars.*;
  * @author MEEPofFaith
  * */
 public class BlackHoleRenderer{
-    private final Seq<BlackHoleZone> zones = new Seq<>(BlackHoleZone.class);
-    private final Seq<BlackHoleStar> stars = new Seq<>(BlackHoleStar.class);
+    /** Width of the texture the bins are packed into. */
+    private static final int binTextureWidth = 256;
+
+    private static final int glRgba32f = 0x8814, glFloat = 0x1406;
+
+    /** Pixels added around each black hole's screen region, so rounding never cuts off its edge. */
+    private static final int regionPadding = 2;
+
+    /** Size of the screen tiles black holes are binned into, in pixels. */
+    public static int binSize = 64;
+
     private static BlackHoleRenderer bRenderer;
-    private int zonesIndex;
-    private int starsIndex;
+    private final BlackHoleQueue queue = new BlackHoleQueue();
+    /** Frame the queue's view was last updated on. */
+    private long viewFrame = -1;
     private boolean advanced = true;
-
-    private FrameBuffer buffer;
+    /** If true, lensing and rims are drawn in a single pass, and bloom only adds the glow instead of redrawing the rims. */
+    private boolean composite = true;
+    /** If true, black holes at nearly the same position are merged before drawing. */
+    private boolean coalesce = true;
+    /** Screen passes and the draw calls they took, for the current and the last frame. */
+    private int passes, drawCalls, lastPasses, lastDrawCalls;
+
+    private FrameBuffer buffer, displacementBuffer;
+    private final ScreenRegions regions = new ScreenRegions(), displacementRegions = new ScreenRegions();
+    private final BlackHoleBins bins = new BlackHoleBins();
+    private Pixmap binPixmap;
+    private Texture binTexture;
+    private final BlackHoleData data = new BlackHoleData();
+    private FloatBuffer dataBuffer;
+    private int dataTexture, dataHeight;
 
     protected BlackHoleRenderer(boolean advanced){
         BHShaders.createBlackHoleShaders();
         advanced(advanced);
 
+        Events.run(Trigger.update, () -> {
+            //Compile ahead based on last frame's count, outside of drawing
+            if(this.advanced) BHShaders.prepare(queue.lastZones);
+        });
         Events.run(Trigger.draw, () -> {
             if(this.advanced){
                 advancedDraw();
@@ -38,6 +66,7 @@ public class BlackHoleRenderer{
                 simplifiedDraw();
             }
         });
+        Events.on(ResetEvent.class, e -> BHShaders.releaseUnused());
     }
 
     public static void init(boolean advanced){
@@ -48,6 +77,49 @@ public class BlackHoleRenderer{
         if(bRenderer != null) bRenderer.advanced(advanced);
     }
 
+    public static void toggleComposite(boolean composite){
+        if(bRenderer != null) bRenderer.composite = composite;
+    }
+
+    public static void toggleCoalesce(boolean coalesce){
+        if(bRenderer != null) bRenderer.coalesce = coalesce;
+    }
+
+    /** @return Number of black holes drawn last frame. */
+    public static int drawnZones(){
+        return bRenderer == null ? 0 : bRenderer.queue.lastZones;
+    }
+
+    /** @return Number of black holes culled last frame. */
+    public static int culledZones(){
+        return bRenderer == null ? 0 : bRenderer.queue.lastCulledZones;
+    }
+
+    /** @return Number of black holes merged into others last frame. */
+    public static int coalescedZones(){
+        return bRenderer == null ? 0 : bRenderer.queue.lastCoalescedZones;
+    }
+
+    /** @return Number of stars drawn last frame. */
+    public static int drawnStars(){
+        return bRenderer == null ? 0 : bRenderer.queue.lastStars;
+    }
+
+    /** @return Number of stars culled last frame. */
+    public static int culledStars(){
+        return bRenderer == null ? 0 : bRenderer.queue.lastCulledStars;
+    }
+
+    /** @return Number of screen passes the advanced renderer drew last frame. The bloom blur counts as one. */
+    public static int passes(){
+        return bRenderer == null ? 0 : bRenderer.lastPasses;
+    }
+
+    /** @return Number of draw calls taken by last frame's screen passes. */
+    public static int drawCalls(){
+        return bRenderer == null ? 0 : bRenderer.lastDrawCalls;
+    }
+
     /**
      * Adds a black hole to the renderer.
      *
@@ -78,55 +150,243 @@ public class BlackHoleRenderer{
         Draw.draw(BHLayer.end, () -> {
             buffer.end();
 
-            if(zones.size >= BHShaders.maxCount) BHShaders.createBlackHoleShaders();
-
-            float[] blackholes = new float[zonesIndex * 4];
-            float[] colors = new float[zonesIndex * 4];
-            for(int i = 0; i < zonesIndex; i++){
-                BlackHoleZone zone = zones.items[i];
-                blackholes[i * 4] = zone.x;
-                blackholes[i * 4 + 1] = zone.y;
-                blackholes[i * 4 + 2] = zone.inRadius;
-                blackholes[i * 4 + 3] = zone.outRadius;
-
-                Tmp.c1.abgr8888(zone.color);
-                colors[i * 4] = Tmp.c1.r;
-                colors[i * 4 + 1] = Tmp.c1.g;
-                colors[i * 4 + 2] = Tmp.c1.b;
-                colors[i * 4 + 3] = Tmp.c1.a;
+            if(coalesce) queue.coalesce();
+            float[] zones = queue.zones;
+            int count = Math.min(queue.zoneCount, BHShaders.select(queue.zoneCount));
+            int width = graphics.getWidth(), height = graphics.getHeight();
+            regions.project(
+                zones, count,
+                camera.position.x - camera.width / 2f, camera.position.y - camera.height / 2f, camera.width, camera.height,
+                width, height, regionPadding
+            );
+
+            //Only shade around the black holes, everything else is copied through as is.
+            if(!regions.covers(width, height)){
+                Draw.rect(Draw.wrap(buffer.getTexture()), camera.position.x, camera.position.y, camera.width, -camera.height);
+                Draw.flush();
+                passes++;
+                drawCalls++;
             }
-            BHShaders.lensingShader.blackHoles = blackholes;
-            buffer.blit(BHShaders.lensingShader);
-
-            BHShaders.rimShader.blackHoles = blackholes;
-            BHShaders.rimShader.colors = colors;
-            buffer.begin();
-            Draw.rect();
-            buffer.end();
 
             Bloom bloom = renderer.bloom;
-            if(bloom != null){
-                bloom.capture();
-                buffer.blit(BHShaders.rimShader);
-                drawStars();
-                bloom.render();
+            if(regions.size == 0){
+                drawGlow(bloom);
             }else{
-                buffer.blit(BHShaders.rimShader);
-                drawStars();
+                uploadBins(count);
+                if(BHShaders.dataTexture) uploadData(count);
+
+                float scale = LensingScale.scale(settings.getInt("black-hole-lensing-resolution", 0));
+                if(composite){
+                    if(scale < 1f){
+                        reducedLensing(count, scale);
+                        //The displacement map can't hold the rims, so draw them as geometry instead of an extra screen pass
+                        simplifiedRims();
+                    }else{
+                        setup(BHShaders.compositeShader, count);
+                        BHShaders.compositeShader.colors = queue.zoneColors;
+                        blitRegions(regions, buffer.getTexture(), BHShaders.compositeShader);
+                    }
+                    compositeGlow(bloom);
+                }else{
+                    if(scale < 1f){
+                        reducedLensing(count, scale);
+                    }else{
+                        setup(BHShaders.lensingShader, count);
+                        blitRegions(regions, buffer.getTexture(), BHShaders.lensingShader);
+                    }
+
+                    setup(BHShaders.rimShader, count);
+                    BHShaders.rimShader.colors = queue.zoneColors;
+                    buffer.begin();
+                    Draw.rect();
+                    buffer.end();
+                    passes++;
+                    drawCalls++;
+
+                    if(bloom != null){
+                        bloom.capture();
+                        blitRegions(regions, buffer.getTexture(), BHShaders.rimShader);
+                        drawStars();
+                        bloom.render();
+                        passes++;
+                        drawCalls++;
+                    }else{
+                        blitRegions(regions, buffer.getTexture(), BHShaders.rimShader);
+                        drawStars();
+                    }
+                }
             }
 
-            zonesIndex = 0;
+            endFrame();
         });
     }
 
+    /**
+     * Draws the stars, and with bloom the glow of rims that are already on screen.
+     * Bloom only captures geometric rims and stars and skips its copy of the original, so no screen pass is spent redrawing the rims.
+     */
+    private void compositeGlow(Bloom bloom){
+        if(bloom != null){
+            bloom.setOriginalIntensity(0f);
+            bloom.capture();
+            simplifiedRims();
+            drawStars();
+            bloom.render();
+            //Mindustry never changes it from the default
+            bloom.setOriginalIntensity(1f);
+            passes++;
+            drawCalls++;
+        }
+        drawStars();
+    }
+
+    /** Draws the stars, through bloom when it is enabled. */
+    private void drawGlow(Bloom bloom){
+        if(bloom != null){
+            bloom.capture();
+            drawStars();
+            bloom.render();
+            passes++;
+            drawCalls++;
+        }else{
+            drawStars();
+        }
+    }
+
+    private void setup(BHShaders.BlackHoleShader shader, int count){
+        shader.set(queue.zones, count, binTexture, bins.tilesX, bins.tilesY);
+        shader.data = dataTexture;
+        shader.dataHeight = dataHeight;
+    }
+
+    /** Renders the lensing offsets into a smaller buffer, then applies them to the full resolution scene. */
+    private void reducedLensing(int count, float scale){
+        float maxRadius = 0f;
+        for(int i = 0; i < count; i++){
+            maxRadius = Math.max(maxRadius, queue.zones[i * 4 + 3]);
+        }
+        float range = LensingScale.range(maxRadius);
+
+        if(displacementBuffer == null) displacementBuffer = new FrameBuffer();
+        displacementBuffer.resize(LensingScale.bufferSize(graphics.getWidth(), scale), LensingScale.bufferSize(graphics.getHeight(), scale));
+        //Offsets are filtered by hand in the apply shader
+        displacementBuffer.getTexture().setFilter(TextureFilter.nearest);
+
+        Texture displacement = displacementBuffer.getTexture();
+        //Pad by a texel so filtering at the edges of the regions never reads offsets that weren't rendered
+        displacementRegions.scale(regions, scale, displacement.width, displacement.height, 1);
+
+        setup(BHShaders.displacementShader, count);
+        BHShaders.displacementShader.range = range;
+        displacementBuffer.begin();
+        Blending.disabled.apply();
+        blitRegions(displacementRegions, buffer.getTexture(), BHShaders.displacementShader);
+        Blending.normal.apply();
+        displacementBuffer.end();
+
+        BHShaders.lensingApplyShader.set(
+            displacement, range,
+            camera.position.x - camera.width / 2f, camera.position.y - camera.height / 2f, camera.width, camera.height
+        );
+        blitRegions(regions, buffer.getTexture(), BHShaders.lensingApplyShader);
+
+        //The displacement map can't hold the horizons, so draw them at full resolution to keep their edges crisp.
+        queue.drawHorizons();
+    }
+
+    /** Blits the texture with the shader, limited to the regions of the currently bound buffer. */
+    private void blitRegions(ScreenRegions regions, Texture texture, Shader shader){
+        Draw.flush();
+        Gl.enable(Gl.scissorTest);
+        for(int i = 0; i < regions.size; i++){
+            Gl.scissor(regions.x(i), regions.y(i), regions.width(i), regions.height(i));
+            Draw.blit(texture, shader);
+            Draw.flush();
+        }
+        passes++;
+        drawCalls += regions.size;
+        Gl.disable(Gl.scissorTest);
+    }
+
+    /**
+     * Bins the zones into screen tiles and packs the result into the bin texture.
+     * Each tile takes two texels holding its start and count, followed by every tile's zone indices. All values are stored as 24 bit integers in RGB.
+     */
+    private void uploadBins(int count){
+        int tilesX = Math.max(Mathf.ceil((float)graphics.getWidth() / binSize), 1);
+        int tilesY = Math.max(Mathf.ceil((float)graphics.getHeight() / binSize), 1);
+        bins.bin(
+            queue.zones, count,
+            camera.position.x - camera.width / 2f, camera.position.y - camera.height / 2f, camera.width, camera.height,
+            tilesX, tilesY
+        );
+
+        int tiles = tilesX * tilesY, headers = tiles * 2;
+        int height = Mathf.nextPowerOfTwo(Math.max(Mathf.ceil((float)(headers + bins.total) / binTextureWidth), 1));
+        if(binPixmap == null || binPixmap.height < height){
+            if(binPixmap != null){
+                binPixmap.dispose();
+                binTexture.dispose();
+            }
+            binPixmap = new Pixmap(binTextureWidth, height);
+            binTexture = new Texture(binPixmap);
+            binTexture.setFilter(TextureFilter.nearest);
+        }
+
+        ByteBuffer pixels = binPixmap.pixels;
+        for(int t = 0; t < tiles; t++){
+            putTexel(pixels, t * 2, headers + bins.offsets[t]);
+            putTexel(pixels, t * 2 + 1, bins.count(t));
+        }
+        for(int i = 0; i < bins.total; i++){
+            putTexel(pixels, headers + i, bins.indices[i]);
+        }
+        binTexture.draw(binPixmap);
+    }
+
+    /** Packs the zones into the float data texture, growing it if needed. */
+    private void uploadData(int count){
+        data.pack(queue.zones, queue.zoneColors, count);
+        int floats = data.rows * BlackHoleData.width * 4;
+        if(dataBuffer == null || dataBuffer.capacity() < floats){
+            dataBuffer = ByteBuffer.allocateDirect(data.texels.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        dataBuffer.clear();
+        dataBuffer.put(data.texels, 0, floats);
+        dataBuffer.flip();
+
+        //Use a spare texture unit so the batch's bound texture isn't replaced
+        Gl.activeTexture(Gl.texture0 + 2);
+        if(dataTexture == 0){
+            dataTexture = Gl.genTexture();
+            Gl.bindTexture(Gl.texture2d, dataTexture);
+            Gl.texParameteri(Gl.texture2d, Gl.textureMinFilter, Gl.nearest);
+            Gl.texParameteri(Gl.texture2d, Gl.textureMagFilter, Gl.nearest);
+            Gl.texParameteri(Gl.texture2d, Gl.textureWrapS, Gl.clampToEdge);
+            Gl.texParameteri(Gl.texture2d, Gl.textureWrapT, Gl.clampToEdge);
+        }else{
+            Gl.bindTexture(Gl.texture2d, dataTexture);
+        }
+
+        if(data.rows > dataHeight){
+            dataHeight = Mathf.nextPowerOfTwo(data.rows);
+            Gl.texImage2D(Gl.texture2d, 0, glRgba32f, BlackHoleData.width, dataHeight, 0, Gl.rgba, glFloat, null);
+        }
+        Gl.texSubImage2D(Gl.texture2d, 0, 0, 0, BlackHoleData.width, data.rows, Gl.rgba, glFloat, dataBuffer);
+        Gl.activeTexture(Gl.texture0);
+    }
+
+    private static void putTexel(ByteBuffer pixels, int texel, int value){
+        int p = texel * 4;
+        pixels.put(p, (byte)value);
+        pixels.put(p + 1, (byte)(value >>> 8));
+        pixels.put(p + 2, (byte)(value >>> 16));
+    }
+
     private void simplifiedDraw(){
         Draw.draw(Layer.max, () -> {
-            Draw.color(Color.black);
-            for(int i = 0; i < zonesIndex; i++){
-                BlackHoleZone zone = zones.items[i];
-                Fill.circle(zone.x, zone.y, zone.inRadius);
-            }
-            Draw.color();
+            if(coalesce) queue.coalesce();
+            queue.drawHorizons();
 
             Bloom bloom = renderer.bloom;
             if(bloom != null){
@@ -139,41 +399,24 @@ public class BlackHoleRenderer{
                 drawStars();
             }
 
-            zonesIndex = 0;
+            endFrame();
         });
     }
 
     private void simplifiedRims(){
-        for(int i = 0; i < zonesIndex; i++){
-            BlackHoleZone zone = zones.items[i];
-            float rad = Mathf.lerp(zone.inRadius, zone.outRadius, 0.125f);
-            int vert = Lines.circleVertices(rad);
-            float space = 360f / vert;
-
-            Tmp.c1.abgr8888(zone.color);
-            float c1 = Tmp.c1.toFloatBits();
-            float c2 = Tmp.c1.a(0).toFloatBits();
-
-            for(int j = 0; j < vert; j++){
-                float sin1 = Mathf.sinDeg(j * space), sin2 = Mathf.sinDeg((j + 1) * space);
-                float cos1 = Mathf.cosDeg(j * space), cos2 = Mathf.cosDeg((j + 1) * space);
-
-                Fill.quad(
-                    zone.x + cos1 * zone.inRadius, zone.y + sin1 * zone.inRadius, c1,
-                    zone.x + cos2 * zone.inRadius, zone.y + sin2 * zone.inRadius, c1,
-                    zone.x + cos2 * rad, zone.y + sin2 * rad, c2,
-                    zone.x + cos1 * rad, zone.y + sin1 * rad, c2
-                );
-            }
-        }
+        queue.drawRims();
     }
 
     private void drawStars(){
-        for(int i = 0; i < starsIndex; i++){
-            BlackHoleStar star = stars.items[i];
-            BHDrawf.drawStar(star.x, star.y, star.w, star.h, star.angleOffset, star.inColor, star.outColor);
-        }
-        starsIndex = 0;
+        queue.drawStars();
+    }
+
+    /** Resets the zones and stars for the next frame. */
+    private void endFrame(){
+        queue.endFrame();
+        lastPasses = passes;
+        lastDrawCalls = drawCalls;
+        passes = drawCalls = 0;
     }
 
     private void advanced(boolean advanced){
@@ -182,55 +425,30 @@ public class BlackHoleRenderer{
             buffer = new FrameBuffer();
         }else{
             if(buffer != null) buffer.dispose();
+            if(displacementBuffer != null){
+                displacementBuffer.dispose();
+                displacementBuffer = null;
+            }
         }
     }
 
     private void addBH(float x, float y, float inRadius, float outRadius, Color color){
-        if(inRadius > outRadius || outRadius <= 0) return;
-        if(zones.size <= zonesIndex) zones.add(new BlackHoleZone());
-
-        float res = Color.toFloatBits(color.r, color.g, color.b, 1);
-
-        BlackHoleZone zone = zones.items[zonesIndex];
-        zone.set(x, y, res, inRadius, outRadius);
-
-        zonesIndex++;
+        updateView();
+        queue.addZone(x, y, inRadius, outRadius, color);
     }
 
     private void addS(float x, float y, float w, float h, float angleOffset, Color in, Color out){
-        if(w <= 0 || h <= 0) return;
-        if(stars.size <= starsIndex) stars.add(new BlackHoleStar());
-
-        BlackHoleStar star = stars.items[starsIndex];
-        star.set(x, y, w, h, angleOffset, in.toFloatBits(), out.toFloatBits());
-
-        starsIndex++;
-    }
-
-    private static class BlackHoleZone{
-        float x, y, color, inRadius, outRadius;
-
-        public void set(float x, float y, float color, float inRadius, float outRadius){
-            this.x = x;
-            this.y = y;
-            this.color = color;
-            this.inRadius = inRadius;
-            this.outRadius = outRadius;
-        }
+        updateView();
+        queue.addStar(x, y, w, h, angleOffset, in, out);
     }
 
-
-    private static class BlackHoleStar{
-        float x, y, w, h, angleOffset, inColor, outColor;
-
-        public void set(float x, float y, float w, float h, float angleOffset, float inColor, float outColor){
-            this.x = x;
-            this.y = y;
-            this.w = w;
-            this.h = h;
-            this.angleOffset = angleOffset;
-            this.inColor = inColor;
-            this.outColor = outColor;
-        }
+    /** Culls against the camera of the current frame. */
+    private void updateView(){
+        if(viewFrame == graphics.getFrameId()) return;
+        viewFrame = graphics.getFrameId();
+        queue.view(
+            camera.position.x - camera.width / 2f, camera.position.y - camera.height / 2f, camera.width, camera.height,
+            graphics.getWidth() / camera.width
+        );
     }
 }
@@ -0,0 +1,51 @@
+package blackhole.graphics;
+
+import arc.math.*;
+
+/** Maps the reduced resolution lensing displacement buffer to the camera. */
+public class LensingScale{
+    /** Resolution scale of each value of the lensing resolution setting. */
+    public static final float[] scales = {1f, 0.5f, 0.25f};
+
+    /** @return Resolution scale for the setting, clamped to the available scales. */
+    public static float scale(int setting){
+        return scales[Mathf.clamp(setting, 0, scales.length - 1)];
+    }
+
+    /** @return Size of the displacement buffer along an axis. Always covers the whole screen. */
+    public static int bufferSize(int screen, float scale){
+        return Math.max(Mathf.ceil(screen * scale), 1);
+    }
+
+    /**
+     * The displacement buffer always covers exactly the camera view, so texel edges are spread evenly over it.
+     * This is the position the displacement pass shades each texel at.
+     * @return World position of the center of a displacement buffer texel along an axis.
+     */
+    public static float texelToWorld(int texel, int bufferSize, float camStart, float camSize){
+        return camStart + (texel + 0.5f) / bufferSize * camSize;
+    }
+
+    /** @return Continuous texel position of a world position along an axis, where integer values are texel centers. Inverse of {@link #texelToWorld}. */
+    public static float worldToTexel(float world, int bufferSize, float camStart, float camSize){
+        return (world - camStart) / camSize * bufferSize - 0.5f;
+    }
+
+    /** @return Texels per world unit along an axis. {@link #worldToTexel} is world * texelScale + {@link #texelOffset}. */
+    public static float texelScale(int bufferSize, float camSize){
+        return bufferSize / camSize;
+    }
+
+    /** @return Continuous texel position of the world origin along an axis. */
+    public static float texelOffset(int bufferSize, float camStart, float camSize){
+        return worldToTexel(0f, bufferSize, camStart, camSize);
+    }
+
+    /**
+     * A single black hole moves a pixel at most twice its lensing radius, so a few overlapping black holes fit in twice that again.
+     * @return Largest offset the displacement buffer has to encode, in world units.
+     */
+    public static float range(float maxOutRadius){
+        return Math.max(maxOutRadius * 4f, 1f);
+    }
+}
@@ -5,9 +5,15 @@ import arc.graphics.g2d.*;
 import arc.math.*;
 import mindustry.graphics.*;
 
-public class LightTrail extends Trail{
+public class LightTrail extends PooledTrail{
+    /** Total number of lights submitted by every light trail. */
+    public static int lightsSubmitted;
+
     private final Color drawColor = new Color();
     public float lightOpacity;
+    public LightMode lightMode = LightMode.perSegment;
+    /** Most lights drawn per trail in {@link LightMode#capped} mode. */
+    public int maxLights = 3;
 
     public LightTrail(int length, float lightOpacity){
         super(length);
@@ -21,6 +27,8 @@ public class LightTrail extends Trail{
         out.lastX = lastX;
         out.lastY = lastY;
         out.lastAngle = lastAngle;
+        out.lightMode = lightMode;
+        out.maxLights = maxLights;
         return out;
     }
 
@@ -63,16 +71,70 @@ public class LightTrail extends Trail{
                 x2 + nx, y2 + ny,
                 x2 - nx, y2 - ny
             );
-            Drawf.light(x1, y1, x2, y2, (i/3f + 1) * size * w2 * 6f, drawColor, light * lightOpacity);
+            if(lightMode == LightMode.perSegment){
+                light(x1, y1, x2, y2, (i/3f + 1) * size * w2 * 6f, light * lightOpacity);
+            }
 
             lastAngle = z2;
         }
 
+        if(lightMode != LightMode.perSegment) drawSpanLights(size, light);
+
         Draw.reset();
     }
 
+    /** Draws one light per span of segments, each as wide as the widest segment light it replaces. */
+    private void drawSpanLights(float size, float light){
+        int segments = points.size / 3;
+        int lights = lightCount(lightMode, segments, maxLights);
+        float[] items = points.items;
+
+        for(int j = 0; j < lights; j++){
+            //Segment k goes from point k to point k + 1, where the point after the last one is lastX/Y/W.
+            int start = j * segments / lights, end = (j + 1) * segments / lights;
+            float x1 = items[start * 3], y1 = items[start * 3 + 1];
+            float x2, y2, w2;
+            if(end < segments){
+                x2 = items[end * 3];
+                y2 = items[end * 3 + 1];
+                w2 = items[end * 3 + 2];
+            }else{
+                x2 = lastX;
+                y2 = lastY;
+                w2 = lastW;
+            }
+            if(w2 <= 0.001f) continue;
+
+            light(x1, y1, x2, y2, end * size * w2 * 6f, light * lightOpacity);
+        }
+    }
+
+    /** Submits a line light in the trail's color. */
+    protected void light(float x1, float y1, float x2, float y2, float stroke, float alpha){
+        Drawf.light(x1, y1, x2, y2, stroke, drawColor, alpha);
+        lightsSubmitted++;
+    }
+
+    /** @return How many lights a trail with the given number of segments submits at most. */
+    public static int lightCount(LightMode mode, int segments, int maxLights){
+        switch(mode){
+            case merged: return Math.min(segments, 1);
+            case capped: return Math.min(segments, Math.max(maxLights, 1));
+            default: return segments;
+        }
+    }
+
     @Override
     public void draw(Color color, float width){
         draw(color, width, 1f);
     }
+
+    public enum LightMode{
+        /** One light for every segment of the trail. */
+        perSegment,
+        /** A single light from the end of the trail to its head. */
+        merged,
+        /** The trail is split into at most {@link #maxLights} spans with one light each. */
+        capped
+    }
 }
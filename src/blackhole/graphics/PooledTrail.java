@@ -0,0 +1,19 @@
+package blackhole.graphics;
+
+import arc.util.pooling.Pool.*;
+import mindustry.graphics.*;
+
+/** A {@link Trail} that can be cleared and reused through a pool. */
+public class PooledTrail extends Trail implements Poolable{
+    public PooledTrail(int length){
+        super(length);
+    }
+
+    @Override
+    public void reset(){
+        points.clear();
+        lastX = lastY = lastAngle = -1f;
+        counter = 0f;
+        lastW = 0f;
+    }
+}
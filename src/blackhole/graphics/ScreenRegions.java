@@ -0,0 +1,156 @@
+package blackhole.graphics;
+
+import arc.math.*;
+
+/**
+ * Screen space rectangles around the black holes of a frame, in pixels with the origin at the bottom left.
+ * Overlapping rectangles are merged, so the regions never overlap and their total area is the area they cover.
+ */
+public class ScreenRegions{
+    /** Past this many regions, new ones are merged into whichever region grows the least. */
+    public static int maxRegions = 32;
+
+    /** x1, y1, x2 and y2 of each region. Only the first {@link #size} are valid. */
+    public int[] rects = new int[16];
+    public int size;
+
+    /**
+     * Projects the black holes onto the screen and merges their bounding rectangles.
+     * @param zones x, y, inRadius and outRadius of each black hole
+     * @param camX world x of the left edge of the view
+     * @param camY world y of the bottom edge of the view
+     * @param camW world width of the view
+     * @param camH world height of the view
+     * @param padding pixels added around each black hole to cover rounding
+     */
+    public void project(float[] zones, int count, float camX, float camY, float camW, float camH, int width, int height, int padding){
+        size = 0;
+        float sx = width / camW, sy = height / camH;
+        for(int i = 0; i < count; i++){
+            int z = i * 4;
+            float x = zones[z], y = zones[z + 1], r = zones[z + 3];
+            add(
+                Mathf.clamp((int)Math.floor((x - r - camX) * sx) - padding, 0, width),
+                Mathf.clamp((int)Math.floor((y - r - camY) * sy) - padding, 0, height),
+                Mathf.clamp((int)Math.ceil((x + r - camX) * sx) + padding, 0, width),
+                Mathf.clamp((int)Math.ceil((y + r - camY) * sy) + padding, 0, height)
+            );
+        }
+    }
+
+    /**
+     * Copies another set of regions onto a buffer of a different resolution.
+     * @param scale size of the target buffer relative to the source
+     * @param padding texels added around each region, for filtering
+     */
+    public void scale(ScreenRegions other, float scale, int width, int height, int padding){
+        size = 0;
+        for(int i = 0; i < other.size; i++){
+            int r = i * 4;
+            add(
+                Mathf.clamp((int)Math.floor(other.rects[r] * scale) - padding, 0, width),
+                Mathf.clamp((int)Math.floor(other.rects[r + 1] * scale) - padding, 0, height),
+                Mathf.clamp((int)Math.ceil(other.rects[r + 2] * scale) + padding, 0, width),
+                Mathf.clamp((int)Math.ceil(other.rects[r + 3] * scale) + padding, 0, height)
+            );
+        }
+    }
+
+    /** Adds a rectangle, merging it with every region it overlaps. Empty rectangles are ignored. */
+    public void add(int x1, int y1, int x2, int y2){
+        if(x1 >= x2 || y1 >= y2) return;
+
+        //A merged rectangle can reach regions that were already checked, so start over after every merge.
+        for(int i = 0; i < size;){
+            int r = i * 4;
+            if(overlaps(x1, y1, x2, y2, rects[r], rects[r + 1], rects[r + 2], rects[r + 3])){
+                x1 = Math.min(x1, rects[r]);
+                y1 = Math.min(y1, rects[r + 1]);
+                x2 = Math.max(x2, rects[r + 2]);
+                y2 = Math.max(y2, rects[r + 3]);
+                remove(i);
+                i = 0;
+            }else{
+                i++;
+            }
+        }
+
+        if(size >= maxRegions){
+            int best = 0;
+            long bestGrowth = Long.MAX_VALUE;
+            for(int i = 0; i < size; i++){
+                int r = i * 4;
+                long growth = area(Math.min(x1, rects[r]), Math.min(y1, rects[r + 1]), Math.max(x2, rects[r + 2]), Math.max(y2, rects[r + 3])) - area(rects[r], rects[r + 1], rects[r + 2], rects[r + 3]);
+                if(growth < bestGrowth){
+                    bestGrowth = growth;
+                    best = i;
+                }
+            }
+
+            int r = best * 4;
+            x1 = Math.min(x1, rects[r]);
+            y1 = Math.min(y1, rects[r + 1]);
+            x2 = Math.max(x2, rects[r + 2]);
+            y2 = Math.max(y2, rects[r + 3]);
+            remove(best);
+            add(x1, y1, x2, y2);
+            return;
+        }
+
+        if(rects.length < (size + 1) * 4){
+            int[] next = new int[rects.length * 2];
+            System.arraycopy(rects, 0, next, 0, size * 4);
+            rects = next;
+        }
+        int r = size * 4;
+        rects[r] = x1;
+        rects[r + 1] = y1;
+        rects[r + 2] = x2;
+        rects[r + 3] = y2;
+        size++;
+    }
+
+    private void remove(int i){
+        size--;
+        System.arraycopy(rects, size * 4, rects, i * 4, 4);
+    }
+
+    public int x(int i){
+        return rects[i * 4];
+    }
+
+    public int y(int i){
+        return rects[i * 4 + 1];
+    }
+
+    public int width(int i){
+        return rects[i * 4 + 2] - rects[i * 4];
+    }
+
+    public int height(int i){
+        return rects[i * 4 + 3] - rects[i * 4 + 1];
+    }
+
+    /** @return Total area of the regions, in pixels. */
+    public long area(){
+        long area = 0;
+        for(int i = 0; i < size; i++){
+            int r = i * 4;
+            area += area(rects[r], rects[r + 1], rects[r + 2], rects[r + 3]);
+        }
+        return area;
+    }
+
+    /** @return Whether the regions cover every pixel of a buffer of the given size. */
+    public boolean covers(int width, int height){
+        return area() >= (long)width * height;
+    }
+
+    static long area(int x1, int y1, int x2, int y2){
+        return (long)(x2 - x1) * (y2 - y1);
+    }
+
+    static boolean overlaps(int ax1, int ay1, int ax2, int ay2, int bx1, int by1, int bx2, int by2){
+        return ax1 < bx2 && bx1 < ax2 && ay1 < by2 && by1 < ay2;
+    }
+}
@@ -0,0 +1,41 @@
+package blackhole.ui;
+
+import arc.util.*;
+import blackhole.utils.*;
+import blackhole.utils.BlackHoleStats.*;
+import mindustry.ui.*;
+
+import static mindustry.Vars.*;
+
+/** Shows {@link BlackHoleStats} on the HUD while stats are enabled. */
+public class BlackHoleStatsOverlay{
+    private static final StringBuilder text = new StringBuilder();
+
+    public static void init(){
+        ui.hudGroup.fill(t -> {
+            t.left();
+            t.visible(() -> BlackHoleStats.enabled && ui.hudfrag.shown);
+            t.label(BlackHoleStatsOverlay::text).style(Styles.outlineLabel).left().pad(4f);
+        });
+    }
+
+    private static CharSequence text(){
+        text.setLength(0);
+        if(!BlackHoleStats.enabled) return text;
+
+        text.append("[accent]Black holes[]");
+        for(Source source : Source.all){
+            text.append("  ").append(source.name()).append(' ').append(BlackHoleStats.holes(source));
+        }
+        text.append("\nPhysics: ").append(Strings.fixed(BlackHoleStats.physicsNanos() / 1000000f, 3)).append(" ms, ")
+            .append(BlackHoleStats.updates()).append(" updates, ")
+            .append(BlackHoleStats.visited()).append(" checks, ")
+            .append(BlackHoleStats.affected()).append(" affected");
+        text.append("\nZones: ").append(BlackHoleStats.drawnZones()).append(" drawn, ").append(BlackHoleStats.culledZones()).append(" culled, ").append(BlackHoleStats.coalescedZones()).append(" merged")
+            .append("  Stars: ").append(BlackHoleStats.drawnStars()).append(" drawn, ").append(BlackHoleStats.culledStars()).append(" culled");
+        text.append("\nShader tier: ").append(BlackHoleStats.shaderTier());
+        text.append("\nSwirls: ").append(BlackHoleStats.swirlParticles())
+            .append("  Trails: ").append(BlackHoleStats.trailsInUse()).append(" / ").append(BlackHoleStats.trailsAllocated()).append(" in use");
+        return text;
+    }
+}
@@ -0,0 +1,358 @@
+package blackhole.utils;
+
+import arc.*;
+import arc.func.*;
+import arc.math.*;
+import arc.math.geom.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.game.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+import mindustry.type.*;
+
+import java.util.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Collects black hole updates during a tick and applies all of them in a single pass after the game update.
+ * Holes are sorted into a grid, and each unit and bullet near a hole is visited once instead of once per hole.
+ * <p>
+ * Each unit and bullet receives the holes' impulses and damage in registration order with the same math as {@link BlackHoleUtils#blackHoleUpdate},
+ * so the net impulse and damage match applying the holes one by one. What differs is the order across entities: every unit is damaged before any building,
+ * and everything happens at the end of the tick instead of during the source's update. Knockback from deaths caused by one hole can therefore land
+ * before instead of after another hole's impulse, which changes velocities by rounding only.
+ */
+public class BlackHoleField{
+    /** Size of the cells holes are sorted into, in world units. */
+    public static float cellSize = 80f;
+    /**
+     * If true, the impulse and damage of each unit and bullet are computed on a thread pool and applied on the main thread afterwards.
+     * Meant for servers with spare cores. Building damage is always applied on the main thread.
+     */
+    public static boolean parallel = false;
+    /** Threads used in parallel mode. */
+    public static int parallelThreads = Math.max(OS.cores - 1, 1);
+    /** Ticks with fewer candidate units and bullets than this are computed on the main thread, even in parallel mode. */
+    public static int minParallelEntities = 512;
+    /**
+     * If true, the suction of distant groups of holes is approximated with {@link #farField}. Damage is always exact.
+     * Meant for thousands of holes at once. Takes priority over parallel mode.
+     */
+    public static boolean approximate = false;
+    /** Approximation used when {@link #approximate} is set. Configure its error bound with {@link FarField#theta}. */
+    public static final FarField farField = new FarField();
+
+    private static final Seq<HoleState> holes = new Seq<>(HoleState.class);
+    private static final IntSeq usedCells = new IntSeq(), cellHoles = new IntSeq();
+    private static final Cons<Unit> unitCons = BlackHoleField::updateUnit;
+    private static final Cons<Bullet> bulletCons = BlackHoleField::updateBullet;
+    private static final Cons<Unit> approximateUnitCons = BlackHoleField::approximateUnit;
+    private static final Cons<Bullet> approximateBulletCons = BlackHoleField::approximateBullet;
+    private static final IntSeq exactHoles = new IntSeq();
+    private static final Vec2 farImpulse = new Vec2();
+    private static final Rect reach = new Rect();
+    private static final Cons<Unit> snapshotUnitCons = unit -> {
+        if(owns(unit.x, unit.y)) ParallelField.addUnit(unit);
+    };
+    private static final Cons<Bullet> snapshotBulletCons = bullet -> {
+        if(bullet != null && owns(bullet.x, bullet.y)) ParallelField.addBullet(bullet);
+    };
+
+    private static boolean initialized;
+    private static int holesIndex;
+    private static float maxHitSize = -1f;
+
+    private static int gridW, gridH, currentCell;
+    private static int[] cellHeads = {};
+    private static int[] entryNext = new int[64], entryHole = new int[64];
+    private static int entries;
+
+    public static void init(){
+        if(initialized) return;
+        initialized = true;
+
+        Events.run(Trigger.afterGameUpdate, BlackHoleField::update);
+        Events.on(ResetEvent.class, e -> holesIndex = 0);
+    }
+
+    /**
+     * Queues a black hole to be applied at the end of the tick.
+     * Takes the same parameters as {@link BlackHoleUtils#blackHoleUpdate(BlackHoleSpec, Team, Posc, float, float, float, float, float, float)}.
+     * If the field has not been initialized, the hole is applied immediately instead.
+     */
+    public static void register(BlackHoleSpec spec, Team team, Posc source, float offsetX, float offsetY, float scl, float damage, float bulletDamage, float strength){
+        if(!initialized){
+            BlackHoleUtils.blackHoleUpdate(spec, team, source, offsetX, offsetY, scl, damage, bulletDamage, strength);
+            return;
+        }
+        next().set(spec, team, source, source.x() + offsetX, source.y() + offsetY, scl, damage, bulletDamage, strength);
+    }
+
+    /** Queues a black hole at full strength. */
+    public static void register(BlackHoleSpec spec, Team team, Posc source, float offsetX, float offsetY, float scl, float damage, float bulletDamage){
+        register(spec, team, source, offsetX, offsetY, scl, damage, bulletDamage, 1f);
+    }
+
+    /** Queues a black hole using the spec's damage values. */
+    public static void register(BlackHoleSpec spec, Team team, Posc source, float offsetX, float offsetY, float scl){
+        register(spec, team, source, offsetX, offsetY, scl, spec.damage, spec.bulletDamage);
+    }
+
+    /**
+     * Queues a black hole to be applied at the end of the tick.
+     * Takes the same parameters as {@link BlackHoleUtils#blackHoleUpdate(Team, Posc, float, float, float, float, float, boolean, float, float, boolean, float, float, float, float)}.
+     * If the field has not been initialized, the hole is applied immediately instead.
+     */
+    public static void register(
+        Team team, Posc source, float offsetX, float offsetY,
+        float damageRadius, float suctionRadius,
+        float damage, boolean pierceArmor, float buildingDamageMultiplier, float bulletDamage,
+        boolean repel, float force, float scaledForce, float bulletForce, float scaledBulletForce
+    ){
+        if(!initialized){
+            BlackHoleUtils.blackHoleUpdate(team, source, offsetX, offsetY, damageRadius, suctionRadius, damage, pierceArmor, buildingDamageMultiplier, bulletDamage, repel, force, scaledForce, bulletForce, scaledBulletForce);
+            return;
+        }
+
+        next().set(
+            team, source, source.x() + offsetX, source.y() + offsetY,
+            damageRadius, suctionRadius,
+            damage, pierceArmor, buildingDamageMultiplier, bulletDamage,
+            repel, force, scaledForce, bulletForce, scaledBulletForce
+        );
+    }
+
+    private static HoleState next(){
+        if(holes.size <= holesIndex) holes.add(new HoleState());
+        return holes.items[holesIndex++];
+    }
+
+    /** @return Number of holes queued for the current tick. */
+    public static int queued(){
+        return holesIndex;
+    }
+
+    private static void update(){
+        if(holesIndex == 0){
+            BlackHoleScheduler.endTick(0, 0L);
+            return;
+        }
+        long start = Time.nanos();
+
+        if(maxHitSize < 0f){
+            for(UnitType type : content.units()){
+                maxHitSize = Math.max(maxHitSize, type.hitSize);
+            }
+        }
+
+        if(approximate){
+            updateApproximate();
+        }else{
+            updateCells();
+        }
+
+        //After units, like a single per-hole update
+        for(int i = 0; i < holesIndex; i++){
+            HoleState hole = holes.items[i];
+            if(hole.damage > 0f){
+                BlackHoleUtils.damageBuildings(hole.team, hole.x, hole.y, hole.damageRadius, hole.damage, hole.buildingDamageMultiplier, hole.pierceArmor);
+            }
+        }
+
+        for(int i = 0; i < holesIndex; i++){
+            holes.items[i].source = null;
+        }
+        long nanos = Time.nanos() - start;
+        BlackHoleScheduler.endTick(holesIndex, nanos);
+        BlackHoleStats.applied(holesIndex);
+        BlackHoleStats.physics(nanos);
+        holesIndex = 0;
+    }
+
+    /** Applies every hole exactly, visiting each unit and bullet once from the cell that owns it. */
+    private static void updateCells(){
+        float far = buildGrid();
+        boolean parallel = BlackHoleField.parallel;
+        if(parallel) ParallelField.begin(holes.items);
+
+        for(int i = 0; i < usedCells.size; i++){
+            int cell = usedCells.items[i];
+            int cx = cell % gridW, cy = cell / gridW;
+
+            //Holes are prepended to each cell, so reverse them back into registration order.
+            cellHoles.clear();
+            for(int e = cellHeads[cell]; e != -1; e = entryNext[e]){
+                cellHoles.add(entryHole[e]);
+            }
+            cellHoles.reverse();
+            if(parallel) ParallelField.list(cellHoles);
+
+            //Edge cells also own everything outside of the world
+            float qx = cx * cellSize, qy = cy * cellSize, qw = cellSize, qh = cellSize;
+            if(cx == 0){
+                qx -= far;
+                qw += far;
+            }
+            if(cx == gridW - 1) qw += far;
+            if(cy == 0){
+                qy -= far;
+                qh += far;
+            }
+            if(cy == gridH - 1) qh += far;
+
+            currentCell = cell;
+            Groups.unit.intersect(qx, qy, qw, qh, parallel ? snapshotUnitCons : unitCons);
+            Groups.bullet.intersect(qx, qy, qw, qh, parallel ? snapshotBulletCons : bulletCons);
+        }
+        if(parallel) ParallelField.run();
+
+        for(int i = 0; i < usedCells.size; i++){
+            cellHeads[usedCells.items[i]] = -1;
+        }
+        usedCells.clear();
+        entries = 0;
+    }
+
+    /** Applies damage exactly and approximates the suction of distant groups of holes with the far field. */
+    private static void updateApproximate(){
+        farField.clear();
+        for(int i = 0; i < holesIndex; i++){
+            HoleState h = holes.items[i];
+            farField.add(
+                h.x, h.y, h.suctionRadius, h.damage > 0f ? h.damageRadius : 0f, h.bulletDamage > 0f ? h.damageRadius : 0f,
+                h.force, h.scaledForce, h.bulletForce, h.scaledBulletForce, h.forceSign,
+                h.team.id, affectsSource(h)
+            );
+        }
+        farField.build();
+
+        farField.reach(maxHitSize / 2f, reach);
+        Groups.unit.intersect(reach.x, reach.y, reach.width, reach.height, approximateUnitCons);
+        Groups.bullet.intersect(reach.x, reach.y, reach.width, reach.height, approximateBulletCons);
+    }
+
+    /** @return Whether the hole's source isn't immune to suction, so the hole has to skip it exactly. */
+    private static boolean affectsSource(HoleState h){
+        if(h.source instanceof Unit unit) return !BlackHoleUtils.isUnitImmune(unit);
+        if(h.source instanceof Bullet bullet) return !BlackHoleUtils.isBulletImmune(bullet.type);
+        return false;
+    }
+
+    private static void approximateUnit(Unit unit){
+        float half = unit.hitSize / 2f;
+        exactHoles.clear();
+        farField.damageHoles(unit.x, unit.y, half, unit.team.id, exactHoles);
+        for(int i = 0; i < exactHoles.size; i++){
+            BlackHoleUtils.damageUnit(holes.items[exactHoles.items[i]], unit);
+        }
+
+        if(unit.type.internal || !unit.hittable() || BlackHoleUtils.isUnitImmune(unit)) return;
+
+        exactHoles.clear();
+        farField.unitImpulse(unit.x, unit.y, half, unit.team.id, farImpulse.setZero(), exactHoles);
+        if(!farImpulse.isZero()){
+            BlackHoleStats.count(1, 1);
+            unit.impulseNet(farImpulse);
+        }
+        for(int i = 0; i < exactHoles.size; i++){
+            BlackHoleUtils.suctionUnit(holes.items[exactHoles.items[i]], unit);
+        }
+    }
+
+    private static void approximateBullet(Bullet other){
+        if(other == null || other.type.speed <= 0.01f || BlackHoleUtils.isBulletImmune(other.type)) return;
+
+        exactHoles.clear();
+        farField.bulletImpulse(other.x, other.y, other.team.id, farImpulse.setZero(), exactHoles);
+        if(!farImpulse.isZero()){
+            BlackHoleStats.count(1, 1);
+            other.vel.add(farImpulse);
+            if(other.isRemote()){
+                other.x += farImpulse.x;
+                other.y += farImpulse.y;
+            }
+        }
+        for(int i = 0; i < exactHoles.size; i++){
+            if(BlackHoleUtils.suctionBullet(holes.items[exactHoles.items[i]], other)) return;
+        }
+    }
+
+    /** @return How far the edge cells of the grid have to extend outwards to cover every hole. */
+    private static float buildGrid(){
+        gridW = Math.max(Mathf.ceil(world.unitWidth() / cellSize), 1);
+        gridH = Math.max(Mathf.ceil(world.unitHeight() / cellSize), 1);
+        if(cellHeads.length < gridW * gridH){
+            cellHeads = new int[gridW * gridH];
+            Arrays.fill(cellHeads, -1);
+        }
+
+        float far = 0f;
+        for(int i = 0; i < holesIndex; i++){
+            HoleState hole = holes.items[i];
+            //Units are tested against their center, so holes have to cover the largest possible hitbox as well.
+            float reach = (hole.damage > 0f ? Math.max(hole.suctionRadius, hole.damageRadius) : hole.suctionRadius) + maxHitSize / 2f;
+            far = Math.max(far, reach);
+
+            int x1 = cellX(hole.x - reach), x2 = cellX(hole.x + reach);
+            int y1 = cellY(hole.y - reach), y2 = cellY(hole.y + reach);
+            for(int cx = x1; cx <= x2; cx++){
+                for(int cy = y1; cy <= y2; cy++){
+                    insert(cx + cy * gridW, i);
+                }
+            }
+        }
+
+        return far;
+    }
+
+    private static void insert(int cell, int hole){
+        if(entries >= entryNext.length){
+            entryNext = Arrays.copyOf(entryNext, entries * 2);
+            entryHole = Arrays.copyOf(entryHole, entries * 2);
+        }
+        if(cellHeads[cell] == -1) usedCells.add(cell);
+
+        entryHole[entries] = hole;
+        entryNext[entries] = cellHeads[cell];
+        cellHeads[cell] = entries;
+        entries++;
+    }
+
+    private static int cellX(float x){
+        return Mathf.clamp((int)Math.floor(x / cellSize), 0, gridW - 1);
+    }
+
+    private static int cellY(float y){
+        return Mathf.clamp((int)Math.floor(y / cellSize), 0, gridH - 1);
+    }
+
+    private static boolean owns(float x, float y){
+        return cellX(x) + cellY(y) * gridW == currentCell;
+    }
+
+    private static void updateUnit(Unit unit){
+        if(!owns(unit.x, unit.y)) return;
+
+        for(int i = 0; i < cellHoles.size; i++){
+            HoleState hole = holes.items[cellHoles.items[i]];
+            if(unit.team == hole.team) continue;
+
+            if(BlackHoleUtils.fusedSweep){
+                BlackHoleUtils.sweepUnit(hole, unit);
+            }else{
+                if(hole.damage > 0f) BlackHoleUtils.damageUnit(hole, unit);
+                BlackHoleUtils.suctionUnit(hole, unit);
+            }
+        }
+    }
+
+    private static void updateBullet(Bullet other){
+        if(other == null || !owns(other.x, other.y)) return;
+
+        for(int i = 0; i < cellHoles.size; i++){
+            if(BlackHoleUtils.suctionBullet(holes.items[cellHoles.items[i]], other)) return;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package blackhole.utils;
+
+import arc.math.*;
+import mindustry.gen.*;
+
+/**
+ * Decides when black holes apply their physics.
+ * Holes with the same interval are staggered by id so that a volley doesn't land on a single tick,
+ * holes with no player nearby run at a longer interval, and holes past the per-tick time budget are deferred to a later tick.
+ * Every application is scaled by the time since the last one, up to {@link #maxStrength}. Time past that is carried over to the next applications,
+ * so total force and damage per second stay the same without a single large step.
+ */
+public class BlackHoleScheduler{
+    /** If false, holes are applied every interval, without staggering, lower priority intervals or a budget. */
+    public static boolean enabled = true;
+    /** Time black hole physics may take per tick, in nanoseconds. Estimated from the cost of previous ticks. */
+    public static long budgetNanos = 2000000L;
+    /** Holes with no player within this range, in world units, are low priority. If <= 0 or there are no players, every hole is high priority. */
+    public static float priorityRange = 640f;
+    /** Interval multiplier of low priority holes. Limited to {@link #maxStrength}. */
+    public static float lowPriorityScale = 2f;
+    /** Most a single application is scaled by. Higher values overshoot near the center of holes and make units jitter. */
+    public static float maxStrength = 2f;
+    /** Holes are never deferred by the budget past this many intervals. Time past it is dropped instead of carried over. */
+    public static float maxDelay = 4f;
+
+    /** Running average of the time a single hole takes to apply, in nanoseconds. 0 until the field has been measured. */
+    private static float nanosPerHole;
+    private static int admitted;
+
+    /** Player positions and the {@link #priorityRange} sized cells they're in, sorted by cell. Gathered on the first check of each tick. */
+    private static float[] playerPositions = new float[32];
+    private static long[] playerCells = new long[16];
+    /** Number of gathered players, or -1 if they haven't been gathered this tick. */
+    private static int players = -1;
+
+    /**
+     * @param id stable id of the hole, such as its bullet's id
+     * @return Ticks to delay the hole's first update by, from 0 to the interval.
+     */
+    public static float phase(int id, float interval){
+        if(!enabled) return 0f;
+        //Golden ratio steps spread consecutive ids evenly
+        float f = id * 0.618034f;
+        return (f - (int)f) * interval;
+    }
+
+    /** @return Time to start a hole's elapsed counter at, so that its first update lands on its phase. */
+    public static float start(int id, float interval){
+        return interval - phase(id, interval);
+    }
+
+    /**
+     * @param elapsed ticks since the hole was last applied
+     * @param interval ticks between applications of a high priority hole
+     * @return Strength to apply the hole with if it's due this tick, otherwise 0. Set the elapsed time to {@link #carry} after applying.
+     */
+    public static float due(float x, float y, float elapsed, float interval){
+        if(!enabled) return elapsed >= interval ? 1f : 0f;
+
+        float scaled = interval * (highPriority(x, y) ? 1f : Math.min(lowPriorityScale, maxStrength));
+        if(elapsed < scaled) return 0f;
+
+        boolean overdue = elapsed >= interval * maxDelay;
+        if(!overdue && nanosPerHole > 0f && admitted * nanosPerHole >= budgetNanos) return 0f;
+
+        admitted++;
+        return strength(elapsed, interval);
+    }
+
+    /** @return Strength of a hole applied after the given time. Capped at {@link #maxStrength}. */
+    public static float strength(float elapsed, float interval){
+        return Math.min(Math.min(elapsed, interval * maxDelay) / interval, maxStrength);
+    }
+
+    /** @return Elapsed time left over after applying a hole with the given strength, to count towards its next application. */
+    public static float carry(float elapsed, float interval, float strength){
+        if(!enabled) return 0f;
+        return Math.max(Math.min(elapsed, interval * maxDelay) - strength * interval, 0f);
+    }
+
+    /** @return Whether a player is within {@link #priorityRange} of the position, or there are no players to prioritize for. */
+    static boolean highPriority(float x, float y){
+        if(priorityRange <= 0f) return true;
+        if(players < 0) gatherPlayers();
+        if(players == 0) return true;
+
+        //Cells are as large as the range, so only the ones around the position can hold a player in range
+        int cx = cell(x), cy = cell(y);
+        for(int dy = -1; dy <= 1; dy++){
+            for(int dx = -1; dx <= 1; dx++){
+                long key = key(cx + dx, cy + dy);
+                for(int i = firstInCell(key); i < players && playerCells[i] == key; i++){
+                    if(Mathf.within(x, y, playerPositions[i * 2], playerPositions[i * 2 + 1], priorityRange)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void gatherPlayers(){
+        int size = Groups.player.size();
+        if(playerPositions.length < size * 2) playerPositions = new float[size * 2];
+        for(int i = 0; i < size; i++){
+            Player player = Groups.player.index(i);
+            playerPositions[i * 2] = player.x;
+            playerPositions[i * 2 + 1] = player.y;
+        }
+        setPlayers(playerPositions, size);
+    }
+
+    /** Sorts the given player positions into cells for the rest of the tick. */
+    static void setPlayers(float[] positions, int count){
+        if(playerPositions.length < count * 2) playerPositions = new float[count * 2];
+        if(playerCells.length < count) playerCells = new long[Math.max(count, playerCells.length * 2)];
+        if(positions != playerPositions) System.arraycopy(positions, 0, playerPositions, 0, count * 2);
+
+        //Insertion sort, since there are rarely more than a few players
+        float[] pos = playerPositions;
+        long[] cells = playerCells;
+        for(int i = 0; i < count; i++){
+            float x = pos[i * 2], y = pos[i * 2 + 1];
+            long key = key(cell(x), cell(y));
+            int j = i;
+            for(; j > 0 && cells[j - 1] > key; j--){
+                cells[j] = cells[j - 1];
+                pos[j * 2] = pos[j * 2 - 2];
+                pos[j * 2 + 1] = pos[j * 2 - 1];
+            }
+            cells[j] = key;
+            pos[j * 2] = x;
+            pos[j * 2 + 1] = y;
+        }
+        players = count;
+    }
+
+    /** @return Index of the first gathered player in the cell, or of the first one past it if it's empty. */
+    private static int firstInCell(long key){
+        int low = 0, high = players;
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(playerCells[mid] < key){
+                low = mid + 1;
+            }else{
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int cell(float coord){
+        return Mathf.floor(coord / priorityRange);
+    }
+
+    private static long key(int cx, int cy){
+        return (long)cx << 32 | (cy & 0xffffffffL);
+    }
+
+    /**
+     * Ends the tick, updating the cost estimate.
+     * @param holes number of holes applied this tick
+     * @param nanos time they took to apply
+     */
+    static void endTick(int holes, long nanos){
+        if(holes > 0){
+            float perHole = (float)nanos / holes;
+            nanosPerHole = nanosPerHole <= 0f ? perHole : Mathf.lerp(nanosPerHole, perHole, 0.1f);
+        }
+        admitted = 0;
+        players = -1;
+    }
+}
@@ -0,0 +1,62 @@
+package blackhole.utils;
+
+/**
+ * Immutable set of black hole parameters.
+ * Build once (usually in init) and pass to {@link BlackHoleUtils#blackHoleUpdate(BlackHoleSpec, mindustry.game.Team, mindustry.gen.Posc, float, float, float)}
+ * or {@link BlackHoleField#register(BlackHoleSpec, mindustry.game.Team, mindustry.gen.Posc, float, float, float)} every update.
+ */
+public class BlackHoleSpec{
+    /** Radius where units and bullets are damaged */
+    public final float damageRadius;
+    /** Radius where units and bullets are sucked towards the black hole */
+    public final float suctionRadius;
+    /** Damage dealt to units */
+    public final float damage;
+    /** Damage ignores armor */
+    public final boolean pierceArmor;
+    /** Damage multiplier against buildings */
+    public final float buildingDamageMultiplier;
+    /** Damage dealt to bullets */
+    public final float bulletDamage;
+    /** If true, pushes away instead of pulls in */
+    public final boolean repel;
+    /** Base amount of force applied to units */
+    public final float force;
+    /** Scaled amount of force applied to units. As units get closer to the center, more of scaledForce is added to force. */
+    public final float scaledForce;
+    /** Base amount of force applied to bullets. */
+    public final float bulletForce;
+    /** Scaled amount of force applied to bullets. As bullets get closer to the center, more of scaledForce is added to force. */
+    public final float scaledBulletForce;
+
+    /** -1 if the hole repels, otherwise 1. */
+    public final float forceSign;
+
+    public BlackHoleSpec(
+        float damageRadius, float suctionRadius,
+        float damage, boolean pierceArmor, float buildingDamageMultiplier, float bulletDamage,
+        boolean repel, float force, float scaledForce, float bulletForce, float scaledBulletForce
+    ){
+        this.damageRadius = damageRadius;
+        this.suctionRadius = suctionRadius;
+        this.damage = damage;
+        this.pierceArmor = pierceArmor;
+        this.buildingDamageMultiplier = buildingDamageMultiplier;
+        this.bulletDamage = bulletDamage;
+        this.repel = repel;
+        this.force = force;
+        this.scaledForce = scaledForce;
+        this.bulletForce = bulletForce;
+        this.scaledBulletForce = scaledBulletForce;
+
+        forceSign = repel ? -1f : 1f;
+    }
+
+    public BlackHoleSpec(
+        float damageRadius, float suctionRadius,
+        float damage, float bulletDamage,
+        boolean repel, float force, float scaledForce, float bulletForce, float scaledBulletForce
+    ){
+        this(damageRadius, suctionRadius, damage, false, 1f, bulletDamage, repel, force, scaledForce, bulletForce, scaledBulletForce);
+    }
+}
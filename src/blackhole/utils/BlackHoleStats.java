@@ -0,0 +1,171 @@
+package blackhole.utils;
+
+import arc.*;
+import arc.util.*;
+import blackhole.entities.effect.*;
+import blackhole.graphics.*;
+import mindustry.game.EventType.*;
+
+import java.util.*;
+
+/**
+ * Runtime numbers of the black hole subsystems.
+ * Hole, entity and timing counters are only collected while {@link #enabled} is set, so they cost a single branch when it isn't.
+ * Renderer, shader and particle numbers are read from their subsystems on demand.
+ * Counters are totals of the last finished tick, or of the last frame for holes, which are counted as they are drawn.
+ */
+public class BlackHoleStats{
+    /** If false, counters aren't collected and read as zero. */
+    public static boolean enabled;
+
+    private static boolean initialized;
+    private static final int[] holes = new int[Source.all.length], lastHoles = new int[Source.all.length];
+    private static int visited, affected, applied, lastVisited, lastAffected, lastApplied;
+    private static long physicsNanos, lastPhysicsNanos;
+
+    public static void init(){
+        if(initialized) return;
+        initialized = true;
+
+        Events.run(Trigger.update, BlackHoleStats::tick);
+        Events.run(Trigger.preDraw, BlackHoleStats::frame);
+    }
+
+    /** Enables or disables collection, clearing every counter. */
+    public static void enable(boolean enabled){
+        BlackHoleStats.enabled = enabled;
+        visited = affected = applied = lastVisited = lastAffected = lastApplied = 0;
+        physicsNanos = lastPhysicsNanos = 0L;
+        Arrays.fill(holes, 0);
+        Arrays.fill(lastHoles, 0);
+    }
+
+    /** Counts a hole drawn this frame. */
+    public static void hole(Source source){
+        if(enabled) holes[source.ordinal()]++;
+    }
+
+    /** @return Timestamp to pass to {@link #end}, or 0 if stats are disabled. */
+    public static long start(){
+        return enabled ? Time.nanos() : 0L;
+    }
+
+    /** Adds the time since {@link #start} to the physics time of this tick. */
+    public static void end(long start){
+        if(enabled) physicsNanos += Time.nanos() - start;
+    }
+
+    /** Adds time already measured to the physics time of this tick. */
+    static void physics(long nanos){
+        if(enabled) physicsNanos += nanos;
+    }
+
+    /** Counts an entity checked against a hole. */
+    static void visit(){
+        if(enabled) visited++;
+    }
+
+    /** Counts an entity pulled, pushed or damaged by a hole. */
+    static void affect(){
+        if(enabled) affected++;
+    }
+
+    /** Adds entity checks counted elsewhere, such as by parallel tasks. */
+    static void count(int visited, int affected){
+        if(!enabled) return;
+        BlackHoleStats.visited += visited;
+        BlackHoleStats.affected += affected;
+    }
+
+    /** Counts holes applied to the world. */
+    static void applied(int holes){
+        if(enabled) applied += holes;
+    }
+
+    private static void tick(){
+        lastVisited = visited;
+        lastAffected = affected;
+        lastApplied = applied;
+        lastPhysicsNanos = physicsNanos;
+        visited = affected = applied = 0;
+        physicsNanos = 0L;
+    }
+
+    private static void frame(){
+        System.arraycopy(holes, 0, lastHoles, 0, holes.length);
+        Arrays.fill(holes, 0);
+    }
+
+    /** @return Number of holes of the given source drawn last frame. */
+    public static int holes(Source source){
+        return lastHoles[source.ordinal()];
+    }
+
+    /** @return Number of holes applied to the world last tick, each taking one suction and damage update. */
+    public static int updates(){
+        return lastApplied;
+    }
+
+    /** @return Number of entity checks against holes last tick. An entity in range of several holes is checked once for each. */
+    public static int visited(){
+        return lastVisited;
+    }
+
+    /** @return Number of checks last tick that pulled, pushed or damaged the entity. */
+    public static int affected(){
+        return lastAffected;
+    }
+
+    /** @return Nanoseconds spent applying holes last tick. */
+    public static long physicsNanos(){
+        return lastPhysicsNanos;
+    }
+
+    /** @return Black holes drawn and culled by the renderer last frame. */
+    public static int drawnZones(){
+        return BlackHoleRenderer.drawnZones();
+    }
+
+    public static int culledZones(){
+        return BlackHoleRenderer.culledZones();
+    }
+
+    public static int coalescedZones(){
+        return BlackHoleRenderer.coalescedZones();
+    }
+
+    public static int drawnStars(){
+        return BlackHoleRenderer.drawnStars();
+    }
+
+    public static int culledStars(){
+        return BlackHoleRenderer.culledStars();
+    }
+
+    /** @return Most black holes the current lensing shaders can draw. */
+    public static int shaderTier(){
+        return BHShaders.maxCount;
+    }
+
+    /** @return Number of live swirl particles, from emitters and separate entities. */
+    public static int swirlParticles(){
+        return SwirlBudget.live();
+    }
+
+    /** @return Number of swirl trails in use by particles. */
+    public static int trailsInUse(){
+        return SwirlEffect.usedTrails();
+    }
+
+    /** @return Number of swirl trails ever created, in use or free. */
+    public static int trailsAllocated(){
+        return SwirlEffect.trailsAllocated;
+    }
+
+    /** What a black hole belongs to. */
+    public enum Source{
+        bullet, ability, part, block;
+
+        public static final Source[] all = values();
+    }
+}
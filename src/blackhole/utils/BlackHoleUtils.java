@@ -18,12 +18,44 @@ import static mindustry.Vars.*;
 
 public class BlackHoleUtils{
     private static final IntSet collidedBlocks = new IntSet();
+    private static final IntSeq collided = new IntSeq();
+    private static final IntMap<int[]> tileMasks = new IntMap<>();
+
+    private static int immunityVersion, cachedImmunityVersion = -1;
+    private static final Bits bulletsChecked = new Bits(), bulletsImmune = new Bits();
+    private static final Bits unitTypesChecked = new Bits(), unitTypesImmune = new Bits();
+    private static final ObjectIntMap<Class<?>> unitClassImmunity = new ObjectIntMap<>();
+
+    //Reused state so that updates don't need capturing lambdas
+    private static final HoleState hole = new HoleState(), damageHole = new HoleState();
+    private static final Vec2 impulse = new Vec2();
+    private static HoleState current;
+    //Units found by the fused sweep, with their position and squared distance to the hole when found
+    private static final Seq<Unit> sweptUnits = new Seq<>(Unit.class);
+    private static final FloatSeq sweptUnitData = new FloatSeq();
+    private static final Cons<Unit> suctionUnitCons = unit -> suctionUnit(current, unit);
+    private static final Cons<Bullet> suctionBulletCons = bullet -> suctionBullet(current, bullet);
+    private static final Cons<Unit> sweepUnitCons = unit -> {
+        float dx = current.x - unit.x, dy = current.y - unit.y;
+        sweptUnits.add(unit);
+        sweptUnitData.add(unit.x, unit.y, dx * dx + dy * dy);
+    };
+    private static final Cons<Unit> damageUnitCons = unit -> damageUnit(damageHole, unit);
+    //Units and buildings killed by holes so far, to tell whether a death may have moved or spawned anything
+    private static int kills;
+    private static final Cons<Building> damageBuildingCons = build -> damageBuilding(damageHole, build);
+
+    /**
+     * If true, {@link #blackHoleUpdate} finds units in a single sweep and {@link BlackHoleField} measures each unit's distance once per hole.
+     * If false, units are damaged and pulled in separate sweeps. Units are still damaged and pulled in the same order, so the result is identical either way.
+     */
+    public static boolean fusedSweep = true;
 
     /**
      * Add bullet types you want to be immune to suction to this Seq.
      * This Seq can also be referenced for anything else you do involving suction.
      */
-    public static final ObjectSet<Class<?>> immuneBulletTypes = ObjectSet.with(
+    public static final ObjectSet<Class<?>> immuneBulletTypes = new ImmunitySet<>(
         ContinuousBulletType.class,
         LaserBulletType.class,
         SapBulletType.class,
@@ -35,19 +67,19 @@ public class BlackHoleUtils{
      * Add specific bullets you want to be immune to suction to this Seq.
      * This Seq can also be referenced for anything else you do involving suction.
      */
-    public static final ObjectSet<BulletType> immuneBullets = new ObjectSet<>();
+    public static final ObjectSet<BulletType> immuneBullets = new ImmunitySet<>();
 
     /**
      * Add unit types you want to be immune to suction to this Seq.
      * This Seq can also be referenced for anything else you do involving suction.
      */
-    public static final ObjectSet<Class<?>> immuneUnitTypes = new ObjectSet<>();
+    public static final ObjectSet<Class<?>> immuneUnitTypes = new ImmunitySet<>();
 
     /**
      * Add unit components you want to be immune to suction to this Seq.
      * This Seq can also be referenced for anything else you do involving suction.
      */
-    public static final ObjectSet<Class<?>> immuneUnitComps = ObjectSet.with(
+    public static final ObjectSet<Class<?>> immuneUnitComps = new ImmunitySet<>(
         BlockUnitUnit.class
     );
 
@@ -56,7 +88,7 @@ public class BlackHoleUtils{
      * Add specific units you want to be immune to suction to this Seq.
      * This Seq can also be referenced for anything else you do involving suction.
      */
-    public static final ObjectSet<UnitType> immuneUnits = ObjectSet.with(
+    public static final ObjectSet<UnitType> immuneUnits = new ImmunitySet<>(
         UnitTypes.block
     );
 
@@ -85,42 +117,13 @@ public class BlackHoleUtils{
         float damage, boolean pierceArmor, float buildingDamageMultiplier, float bulletDamage,
         boolean repel, float force, float scaledForce, float bulletForce, float scaledBulletForce
     ){
-        float x = source.x() + offsetX, y = source.y() + offsetY;
-
-        if(damage > 0f) completeDamage(team, x, y, damageRadius, damage, buildingDamageMultiplier, pierceArmor);
-
-        Units.nearbyEnemies(team, x - suctionRadius, y - suctionRadius, suctionRadius * 2f, suctionRadius * 2f, unit -> {
-            float rad = suctionRadius + unit.hitSize / 2f;
-            if(!unit.type.internal && !isUnitImmune(unit) && unit.hittable() && unit.within(x, y, rad) && source != unit){
-                Vec2 impulse = Tmp.v1.trns(unit.angleTo(x, y), force + (1f - unit.dst(x, y) / rad) * scaledForce);
-                if(repel) impulse.rotate(180f);
-                unit.impulseNet(impulse);
-            }
-        });
-
-        Groups.bullet.intersect(x - suctionRadius, y - suctionRadius, suctionRadius * 2f, suctionRadius * 2f, other -> {
-            if(other != null && !isBulletImmune(other.type) && Mathf.within(x, y, other.x, other.y, suctionRadius) && source != other && team != other.team && other.type.speed > 0.01f){
-                Vec2 impulse = Tmp.v1.trns(other.angleTo(x, y), bulletForce + (1f - other.dst(x, y) / suctionRadius) * scaledBulletForce);
-                if(repel) impulse.rotate(180f);
-
-                //Replicate unit impulseNet
-                other.vel().add(impulse);
-
-                if(other.isRemote()){
-                    other.x += impulse.x;
-                    other.y += impulse.y;
-                }
-
-                //Damage/absorb bullets
-                if(bulletDamage > 0f && other.type.hittable && Mathf.within(x, y, other.x, other.y, damageRadius)){
-                    if(other.damage > bulletDamage){
-                        other.damage(other.damage - bulletDamage);
-                    }else{
-                        other.remove();
-                    }
-                }
-            }
-        });
+        hole.set(
+            team, source, source.x() + offsetX, source.y() + offsetY,
+            damageRadius, suctionRadius,
+            damage, pierceArmor, buildingDamageMultiplier, bulletDamage,
+            repel, force, scaledForce, bulletForce, scaledBulletForce
+        );
+        update(hole);
     }
 
     /**
@@ -199,17 +202,243 @@ public class BlackHoleUtils{
         blackHoleUpdate(team, source, 0f, 0f, damageRadius, suctionRadius, damage, bulletDamage, repel, force, scaledForce, bulletForce, scaledBulletForce);
     }
 
+    /**
+     * Handles the suction and damage dealt by black holes
+     *
+     * @param spec Parameters of the black hole
+     * @param team Team of the black hole. Suction & damage affects other teams.
+     * @param source What the black hole is updated from. Used to prevent a unit/bullet from affecting itself.
+     * @param offsetX x offset from the source's position
+     * @param offsetY y offset from the source's position
+     * @param scl Multiplier applied to the spec's radii
+     * @param damage Damage dealt to units. Overrides the spec's damage.
+     * @param bulletDamage Damage dealt to bullets. Overrides the spec's bullet damage.
+     * @param strength Multiplier applied to damage and forces, for holes applied less often than usual. See {@link BlackHoleScheduler}.
+     */
+    public static void blackHoleUpdate(BlackHoleSpec spec, Team team, Posc source, float offsetX, float offsetY, float scl, float damage, float bulletDamage, float strength){
+        hole.set(spec, team, source, source.x() + offsetX, source.y() + offsetY, scl, damage, bulletDamage, strength);
+        update(hole);
+    }
+
+    /**
+     * Handles the suction and damage dealt by black holes
+     *
+     * @param spec Parameters of the black hole
+     * @param team Team of the black hole. Suction & damage affects other teams.
+     * @param source What the black hole is updated from. Used to prevent a unit/bullet from affecting itself.
+     * @param offsetX x offset from the source's position
+     * @param offsetY y offset from the source's position
+     * @param scl Multiplier applied to the spec's radii
+     * @param damage Damage dealt to units. Overrides the spec's damage.
+     * @param bulletDamage Damage dealt to bullets. Overrides the spec's bullet damage.
+     */
+    public static void blackHoleUpdate(BlackHoleSpec spec, Team team, Posc source, float offsetX, float offsetY, float scl, float damage, float bulletDamage){
+        blackHoleUpdate(spec, team, source, offsetX, offsetY, scl, damage, bulletDamage, 1f);
+    }
+
+    /**
+     * Handles the suction and damage dealt by black holes
+     *
+     * @param spec Parameters of the black hole
+     * @param team Team of the black hole. Suction & damage affects other teams.
+     * @param source What the black hole is updated from. Used to prevent a unit/bullet from affecting itself.
+     * @param offsetX x offset from the source's position
+     * @param offsetY y offset from the source's position
+     * @param scl Multiplier applied to the spec's radii
+     */
+    public static void blackHoleUpdate(BlackHoleSpec spec, Team team, Posc source, float offsetX, float offsetY, float scl){
+        blackHoleUpdate(spec, team, source, offsetX, offsetY, scl, spec.damage, spec.bulletDamage);
+    }
+
+    private static void update(HoleState h){
+        long start = BlackHoleStats.start();
+        float r = h.suctionRadius;
+        current = h;
+        if(fusedSweep){
+            //Covers both the damage and the suction box. Units outside either fail its distance check.
+            float reach = h.damage > 0f ? Math.max(r, h.damageRadius) : r;
+            Units.nearbyEnemies(h.team, h.x - reach, h.y - reach, reach * 2f, reach * 2f, sweepUnitCons);
+
+            //Same order as the separate sweeps: damage units, then buildings, then pull units
+            Unit[] units = sweptUnits.items;
+            float[] data = sweptUnitData.items;
+            int count = sweptUnits.size, killed = kills;
+            if(h.damage > 0f){
+                for(int i = 0; i < count; i++){
+                    damageUnit(h, units[i], distance(h, units[i], data, i));
+                }
+                damageBuildings(h.team, h.x, h.y, h.damageRadius, h.damage, h.buildingDamageMultiplier, h.pierceArmor);
+            }
+
+            if(kills != killed){
+                //Deaths can push or spawn units, so find them again like the separate suction sweep does
+                sweptUnits.clear();
+                sweptUnitData.clear();
+                Units.nearbyEnemies(h.team, h.x - r, h.y - r, r * 2f, r * 2f, suctionUnitCons);
+            }else{
+                for(int i = 0; i < count; i++){
+                    suctionUnit(h, units[i], distance(h, units[i], data, i));
+                }
+                sweptUnits.clear();
+                sweptUnitData.clear();
+            }
+        }else{
+            if(h.damage > 0f) completeDamage(h.team, h.x, h.y, h.damageRadius, h.damage, h.buildingDamageMultiplier, h.pierceArmor);
+            Units.nearbyEnemies(h.team, h.x - r, h.y - r, r * 2f, r * 2f, suctionUnitCons);
+        }
+        Groups.bullet.intersect(h.x - r, h.y - r, r * 2f, r * 2f, suctionBulletCons);
+        current = null;
+
+        BlackHoleStats.applied(1);
+        BlackHoleStats.end(start);
+    }
+
+    /** @return Squared distance of a swept unit, measured again if it moved since the sweep. */
+    private static float distance(HoleState h, Unit unit, float[] data, int i){
+        return unit.x != data[i * 3] || unit.y != data[i * 3 + 1] ? dst2(h, unit) : data[i * 3 + 2];
+    }
+
+    /** Same as {@link #damageUnit} followed by {@link #suctionUnit}, sharing the distance to the unit. */
+    static void sweepUnit(HoleState h, Unit unit){
+        float x = unit.x, y = unit.y, dst2 = dst2(h, unit);
+        if(h.damage > 0f){
+            damageUnit(h, unit, dst2);
+            if(unit.x != x || unit.y != y) dst2 = dst2(h, unit);
+        }
+        suctionUnit(h, unit, dst2);
+    }
+
+    static void damageUnit(HoleState h, Unit unit){
+        damageUnit(h, unit, dst2(h, unit));
+    }
+
+    /** @param dst2 Squared distance between the hole and the unit */
+    static void damageUnit(HoleState h, Unit unit, float dst2){
+        BlackHoleStats.visit();
+        float reach = h.damageRadius + unit.hitSize / 2f;
+        if(!unit.dead && unit.hittable() && dst2 < reach * reach){
+            BlackHoleStats.affect();
+            if(h.pierceArmor){
+                unit.damagePierce(h.damage);
+            }else{
+                unit.damage(h.damage);
+            }
+            if(unit.dead) kills++;
+        }
+    }
+
+    static void suctionUnit(HoleState h, Unit unit){
+        suctionUnit(h, unit, dst2(h, unit));
+    }
+
+    /** @param dst2 Squared distance between the hole and the unit */
+    static void suctionUnit(HoleState h, Unit unit, float dst2){
+        BlackHoleStats.visit();
+        if(unit.type.internal || h.source == unit || !unit.hittable() || isUnitImmune(unit)) return;
+
+        float rad = h.suctionRadius + unit.hitSize / 2f;
+        if(dst2 >= rad * rad) return;
+
+        BlackHoleStats.affect();
+        unit.impulseNet(impulse(h, unit.angleTo(h.x, h.y), h.force + (1f - Mathf.sqrt(dst2) / rad) * h.scaledForce));
+    }
+
+    private static float dst2(HoleState h, Unit unit){
+        float dx = h.x - unit.x, dy = h.y - unit.y;
+        return dx * dx + dy * dy;
+    }
+
+    /** @return Whether the bullet was absorbed. */
+    static boolean suctionBullet(HoleState h, Bullet other){
+        BlackHoleStats.visit();
+        if(other == null || h.source == other || h.team == other.team || other.type.speed <= 0.01f || isBulletImmune(other.type)) return false;
+
+        float dx = h.x - other.x, dy = h.y - other.y, dst2 = dx * dx + dy * dy;
+        if(dst2 >= h.suctionRadius2) return false;
+
+        Vec2 impulse = impulse(h, other.angleTo(h.x, h.y), h.bulletForce + (1f - Mathf.sqrt(dst2) / h.suctionRadius) * h.scaledBulletForce);
+        BlackHoleStats.affect();
+
+        //Replicate unit impulseNet
+        other.vel.add(impulse);
+
+        if(other.isRemote()){
+            other.x += impulse.x;
+            other.y += impulse.y;
+        }
+
+        //Damage/absorb bullets
+        if(h.bulletDamage > 0f && other.type.hittable && Mathf.dst2(h.x, h.y, other.x, other.y) < h.damageRadius2){
+            if(other.damage > h.bulletDamage){
+                other.damage(other.damage - h.bulletDamage);
+            }else{
+                other.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return Impulse towards the hole, or away from it if it repels. Uses the same trig as the original per-hole loops, so impulses match them exactly. */
+    private static Vec2 impulse(HoleState h, float angle, float strength){
+        return impulse(h, angle, strength, impulse);
+    }
+
+    static Vec2 impulse(HoleState h, float angle, float strength, Vec2 out){
+        out.trns(angle, strength);
+        if(h.repel) out.rotate(180f);
+        return out;
+    }
+
     /** @return Whether the bullet type is immune to suction. */
     public static boolean isBulletImmune(BulletType type){
-        return immuneBulletTypes.toSeq().contains(c -> c.isAssignableFrom(type.getClass()))
-            || immuneBullets.contains(type);
+        checkImmunityCache();
+
+        int id = type.id;
+        if(!bulletsChecked.get(id)){
+            bulletsChecked.set(id);
+            if(immuneBullets.contains(type) || assignableFrom(immuneBulletTypes, type.getClass())) bulletsImmune.set(id);
+        }
+        return bulletsImmune.get(id);
     }
 
     /** @return Whether the unit type is immune to suction. */
     public static boolean isUnitImmune(Unit unit){
-        return immuneUnitTypes.toSeq().contains(c -> c.isAssignableFrom(unit.type.getClass()))
-            || immuneUnitComps.toSeq().contains(c -> c.isAssignableFrom(unit.getClass()))
-            || immuneUnits.contains(unit.type);
+        checkImmunityCache();
+
+        int id = unit.type.id;
+        if(!unitTypesChecked.get(id)){
+            unitTypesChecked.set(id);
+            if(immuneUnits.contains(unit.type) || assignableFrom(immuneUnitTypes, unit.type.getClass())) unitTypesImmune.set(id);
+        }
+        if(unitTypesImmune.get(id)) return true;
+
+        Class<?> type = unit.getClass();
+        int immune = unitClassImmunity.get(type, -1);
+        if(immune == -1){
+            immune = assignableFrom(immuneUnitComps, type) ? 1 : 0;
+            unitClassImmunity.put(type, immune);
+        }
+        return immune == 1;
+    }
+
+    private static boolean assignableFrom(ObjectSet<Class<?>> classes, Class<?> type){
+        for(Class<?> c : classes){
+            if(c.isAssignableFrom(type)) return true;
+        }
+        return false;
+    }
+
+    /** Drops all cached immunity results if any of the immunity sets were modified. */
+    private static void checkImmunityCache(){
+        if(cachedImmunityVersion == immunityVersion) return;
+
+        bulletsChecked.clear();
+        bulletsImmune.clear();
+        unitTypesChecked.clear();
+        unitTypesImmune.clear();
+        unitClassImmunity.clear();
+        cachedImmunityVersion = immunityVersion;
     }
 
     public static void completeDamage(Team team, float x, float y, float radius, float damage){
@@ -217,44 +446,161 @@ public class BlackHoleUtils{
     }
 
     public static void completeDamage(Team team, float x, float y, float radius, float damage, float buildingDamageMultiplier, boolean pierceArmor){
-        Units.nearbyEnemies(team, x - radius, y - radius, radius * 2f, radius * 2f, unit -> {
-            if(!unit.dead && unit.hittable() && unit.within(x, y, radius + unit.hitSize / 2f)){
-                if(pierceArmor){
-                    unit.damagePierce(damage);
-                }else{
-                    unit.damage(damage);
-                }
-            }
-        });
-
-        trueEachBlock(x, y, radius, build -> {
-            if(build.team != team && !build.dead && build.block != null){
-                if(pierceArmor){
-                    build.damagePierce(damage * buildingDamageMultiplier);
-                }else{
-                    build.damage(damage * buildingDamageMultiplier);
-                }
+        setDamageHole(team, x, y, radius, damage, buildingDamageMultiplier, pierceArmor);
+        Units.nearbyEnemies(team, x - radius, y - radius, radius * 2f, radius * 2f, damageUnitCons);
+
+        trueEachBlock(x, y, radius, damageBuildingCons);
+    }
+
+    public static void damageBuildings(Team team, float x, float y, float radius, float damage, float buildingDamageMultiplier, boolean pierceArmor){
+        setDamageHole(team, x, y, radius, damage, buildingDamageMultiplier, pierceArmor);
+        trueEachBlock(x, y, radius, damageBuildingCons);
+    }
+
+    private static void setDamageHole(Team team, float x, float y, float radius, float damage, float buildingDamageMultiplier, boolean pierceArmor){
+        damageHole.team = team;
+        damageHole.x = x;
+        damageHole.y = y;
+        damageHole.damageRadius = radius;
+        damageHole.damage = damage;
+        damageHole.buildingDamageMultiplier = buildingDamageMultiplier;
+        damageHole.pierceArmor = pierceArmor;
+    }
+
+    static void damageBuilding(HoleState h, Building build){
+        BlackHoleStats.visit();
+        if(build.team != h.team && !build.dead && build.block != null){
+            BlackHoleStats.affect();
+            if(h.pierceArmor){
+                build.damagePierce(h.damage * h.buildingDamageMultiplier);
+            }else{
+                build.damage(h.damage * h.buildingDamageMultiplier);
             }
-        });
+            if(build.dead) kills++;
+        }
     }
 
     public static void trueEachBlock(float wx, float wy, float range, Cons<Building> cons){
-        collidedBlocks.clear();
         int tx = World.toTile(wx);
         int ty = World.toTile(wy);
 
         int tileRange = Mathf.floorPositive(range / tilesize);
+        int[] mask = tileMask(tileRange);
+        int reach = mask.length / 2;
 
-        for(int x = tx - tileRange - 2; x <= tx + tileRange + 2; x++){
-            for(int y = ty - tileRange - 2; y <= ty + tileRange + 2; y++){
+        for(int i = 0; i < mask.length; i++){
+            int x = tx + i - reach, height = mask[i];
+            for(int y = ty - height; y <= ty + height; y++){
                 if(Mathf.within(x * tilesize, y * tilesize, wx, wy, range)){
                     Building other = world.build(x, y);
-                    if(other != null && !collidedBlocks.contains(other.pos())){
-                        cons.get(other);
-                        collidedBlocks.add(other.pos());
+                    if(other == null) continue;
+
+                    //Only multiblocks can be found more than once
+                    if(other.block.size > 1){
+                        if(!collidedBlocks.add(other.pos())) continue;
+                        collided.add(other.pos());
                     }
+                    cons.get(other);
                 }
             }
         }
+
+        for(int i = 0; i < collided.size; i++){
+            collidedBlocks.remove(collided.items[i]);
+        }
+        collided.clear();
+    }
+
+    /**
+     * @return Half of the column heights of every tile that can be within range of a position inside the center tile, from left to right.
+     * Columns that can never be in range have a height of -1.
+     */
+    private static int[] tileMask(int tileRange){
+        int[] mask = tileMasks.get(tileRange);
+        if(mask != null) return mask;
+
+        //The position can be up to half a tile away from the center tile, and range is always less than tileRange + 1 tiles.
+        int reach = tileRange + 1;
+        float limit = reach * tilesize, half = tilesize / 2f;
+        mask = new int[reach * 2 + 1];
+        for(int dx = -reach; dx <= reach; dx++){
+            float ex = Math.max(Math.abs(dx) * tilesize - half, 0f);
+            int height = -1;
+            for(int dy = 0; dy <= reach; dy++){
+                float ey = Math.max(dy * tilesize - half, 0f);
+                if(ex * ex + ey * ey < limit * limit) height = dy;
+            }
+            mask[dx + reach] = height;
+        }
+
+        tileMasks.put(tileRange, mask);
+        return mask;
+    }
+
+    /** Set that invalidates the cached immunity results whenever its contents change, including removals through its iterator. */
+    private static class ImmunitySet<T> extends ObjectSet<T>{
+        //Two iterators that take turns, like Arc's own collections, so iterating doesn't allocate and can be nested once
+        private ImmunityIterator<T> iterator1, iterator2;
+        private boolean second;
+
+        @SafeVarargs
+        ImmunitySet(T... values){
+            addAll(values);
+        }
+
+        @Override
+        public boolean add(T key){
+            if(super.add(key)){
+                immunityVersion++;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean remove(T key){
+            if(super.remove(key)){
+                immunityVersion++;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void clear(int maximumCapacity){
+            super.clear(maximumCapacity);
+            immunityVersion++;
+        }
+
+        @Override
+        public void clear(){
+            super.clear();
+            immunityVersion++;
+        }
+
+        /** Returns a reused iterator, which also invalidates the cache when removing through it. */
+        @Override
+        public ObjectSetIterator<T> iterator(){
+            if(iterator1 == null){
+                iterator1 = new ImmunityIterator<>(this);
+                iterator2 = new ImmunityIterator<>(this);
+            }
+
+            ImmunityIterator<T> iterator = (second = !second) ? iterator2 : iterator1;
+            iterator.reset();
+            return iterator;
+        }
+    }
+
+    private static class ImmunityIterator<T> extends ObjectSet.ObjectSetIterator<T>{
+        ImmunityIterator(ObjectSet<T> set){
+            super(set);
+        }
+
+        @Override
+        public void remove(){
+            super.remove();
+            immunityVersion++;
+        }
     }
 }
@@ -0,0 +1,312 @@
+package blackhole.utils;
+
+import arc.math.*;
+import arc.math.geom.*;
+import arc.struct.*;
+
+import java.util.*;
+
+/**
+ * Approximates the suction of many black holes at once, Barnes-Hut style.
+ * Holes are grouped into a grid. A group that is far away relative to its size, and that every member reaches, is applied as a single hole at its centroid.
+ * Since suction falls off linearly with distance, summing the members' forces is exact apart from their direction and, for units, their hitbox-adjusted radius.
+ * Everything else, including every hole that can damage the unit or bullet, is left to be evaluated exactly.
+ * Doesn't touch the game world, so the approximation can be compared against exact results directly.
+ */
+public class FarField{
+    /** Groups are aggregated while their extent is less than this fraction of their distance. Lower is more accurate and slower. */
+    public float theta = 0.5f;
+    /** Size of the cells holes are grouped by, in world units. */
+    public float cellSize = 64f;
+    /** Most cells along each axis. Cells are enlarged to fit huge areas. */
+    public int maxCells = 256;
+
+    /** Number of holes added. */
+    public int size;
+    private float[] holeX = new float[64], holeY = new float[64], radius = new float[64], damageRadius = new float[64], bulletDamageRadius = new float[64];
+    private float[] force = new float[64], scaledForce = new float[64], bulletForce = new float[64], scaledBulletForce = new float[64], sign = new float[64];
+    private int[] team = new int[64], next = new int[64];
+    private boolean[] exact = new boolean[64];
+
+    private float minX, minY, cell;
+    private int gridW, gridH;
+    private int[] cellGroup = {};
+    private float maxRadius, maxDamageRadius;
+
+    private int groups;
+    /** Per group: first and last member, and member count. */
+    private int[] head = new int[16], tail = new int[16], count = new int[16], groupTeam = new int[16];
+    private boolean[] groupExact = new boolean[16];
+    private float[] centerX = new float[16], centerY = new float[16], extent = new float[16];
+    private float[] minRadius = new float[16], groupMaxRadius = new float[16], meanRadius = new float[16], groupDamageRadius = new float[16], groupBulletDamageRadius = new float[16];
+    /** Per group, summed over members: (force + scaledForce) * sign, scaledForce * sign, (bulletForce + scaledBulletForce) * sign and scaledBulletForce * sign / radius. */
+    private float[] unitA = new float[16], unitS = new float[16], bulletA = new float[16], bulletB = new float[16];
+
+    public void clear(){
+        size = 0;
+        groups = 0;
+    }
+
+    /**
+     * Adds a hole. Holes are numbered in the order they are added.
+     * @param damageRadius radius the hole damages units in, or 0 if it doesn't damage units
+     * @param bulletDamageRadius radius the hole damages and absorbs bullets in, or 0 if it doesn't damage bullets
+     * @param team id of the hole's team. Entities of the same team are not affected.
+     * @param exact if true, the hole is never aggregated, for example because its source could be affected by it
+     */
+    public void add(
+        float x, float y, float radius, float damageRadius, float bulletDamageRadius,
+        float force, float scaledForce, float bulletForce, float scaledBulletForce, float sign,
+        int team, boolean exact
+    ){
+        if(size >= holeX.length) grow(size * 2);
+
+        int i = size++;
+        holeX[i] = x;
+        holeY[i] = y;
+        this.radius[i] = radius;
+        this.damageRadius[i] = damageRadius;
+        this.bulletDamageRadius[i] = bulletDamageRadius;
+        this.force[i] = force;
+        this.scaledForce[i] = scaledForce;
+        this.bulletForce[i] = bulletForce;
+        this.scaledBulletForce[i] = scaledBulletForce;
+        this.sign[i] = sign;
+        this.team[i] = team;
+        this.exact[i] = exact;
+    }
+
+    /** Groups the added holes. Call after adding and before querying. */
+    public void build(){
+        groups = 0;
+        if(size == 0) return;
+
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        minX = minY = Float.MAX_VALUE;
+        maxRadius = maxDamageRadius = 0f;
+        for(int i = 0; i < size; i++){
+            minX = Math.min(minX, holeX[i]);
+            minY = Math.min(minY, holeY[i]);
+            maxX = Math.max(maxX, holeX[i]);
+            maxY = Math.max(maxY, holeY[i]);
+            maxRadius = Math.max(maxRadius, radius[i]);
+            maxDamageRadius = Math.max(maxDamageRadius, damageRadius[i]);
+        }
+
+        cell = Math.max(cellSize, Math.max(maxX - minX, maxY - minY) / maxCells);
+        gridW = (int)((maxX - minX) / cell) + 1;
+        gridH = (int)((maxY - minY) / cell) + 1;
+        if(cellGroup.length < gridW * gridH) cellGroup = new int[gridW * gridH];
+        Arrays.fill(cellGroup, 0, gridW * gridH, -1);
+
+        for(int i = 0; i < size; i++){
+            int c = cellX(holeX[i]) + cellY(holeY[i]) * gridW;
+            int g = cellGroup[c];
+            if(g == -1){
+                g = cellGroup[c] = group();
+                head[g] = i;
+                groupTeam[g] = team[i];
+            }else{
+                next[tail[g]] = i;
+                if(groupTeam[g] != team[i]) groupTeam[g] = -1;
+            }
+            tail[g] = i;
+            next[i] = -1;
+            count[g]++;
+
+            float s = sign[i];
+            centerX[g] += holeX[i];
+            centerY[g] += holeY[i];
+            minRadius[g] = Math.min(minRadius[g], radius[i]);
+            groupMaxRadius[g] = Math.max(groupMaxRadius[g], radius[i]);
+            meanRadius[g] += radius[i];
+            groupDamageRadius[g] = Math.max(groupDamageRadius[g], damageRadius[i]);
+            groupBulletDamageRadius[g] = Math.max(groupBulletDamageRadius[g], bulletDamageRadius[i]);
+            groupExact[g] |= exact[i];
+            unitA[g] += (force[i] + scaledForce[i]) * s;
+            unitS[g] += scaledForce[i] * s;
+            bulletA[g] += (bulletForce[i] + scaledBulletForce[i]) * s;
+            bulletB[g] += radius[i] > 0f ? scaledBulletForce[i] * s / radius[i] : 0f;
+        }
+
+        for(int g = 0; g < groups; g++){
+            centerX[g] /= count[g];
+            centerY[g] /= count[g];
+            meanRadius[g] /= count[g];
+            float ext = 0f;
+            for(int i = head[g]; i != -1; i = next[i]){
+                ext = Math.max(ext, Mathf.dst(holeX[i], holeY[i], centerX[g], centerY[g]));
+            }
+            extent[g] = ext;
+        }
+    }
+
+    /**
+     * Adds the approximate suction of aggregated groups on a unit to out, and lists every other hole that may reach it.
+     * @param halfSize half of the unit's hitbox size
+     * @param exactHoles receives holes to evaluate exactly, grouped by cell
+     */
+    public void unitImpulse(float x, float y, float halfSize, int entityTeam, Vec2 out, IntSeq exactHoles){
+        query(x, y, halfSize, entityTeam, false, out, exactHoles);
+    }
+
+    /** Same as {@link #unitImpulse} for a bullet, which has no hitbox. */
+    public void bulletImpulse(float x, float y, int entityTeam, Vec2 out, IntSeq exactHoles){
+        query(x, y, 0f, entityTeam, true, out, exactHoles);
+    }
+
+    /** Lists every hole of another team that damages units and may reach the position. */
+    public void damageHoles(float x, float y, float halfSize, int entityTeam, IntSeq out){
+        if(groups == 0) return;
+        float reach = maxDamageRadius + halfSize;
+        int x1 = cellX(x - reach), x2 = cellX(x + reach), y1 = cellY(y - reach), y2 = cellY(y + reach);
+        for(int cy = y1; cy <= y2; cy++){
+            for(int cx = x1; cx <= x2; cx++){
+                int g = cellGroup[cx + cy * gridW];
+                if(g == -1 || groupTeam[g] == entityTeam || groupDamageRadius[g] <= 0f) continue;
+                for(int i = head[g]; i != -1; i = next[i]){
+                    if(team[i] != entityTeam && damageRadius[i] > 0f) out.add(i);
+                }
+            }
+        }
+    }
+
+    private void query(float x, float y, float halfSize, int entityTeam, boolean bullet, Vec2 out, IntSeq exactHoles){
+        if(groups == 0) return;
+        float reach = maxRadius + halfSize;
+        int x1 = cellX(x - reach), x2 = cellX(x + reach), y1 = cellY(y - reach), y2 = cellY(y + reach);
+        for(int cy = y1; cy <= y2; cy++){
+            for(int cx = x1; cx <= x2; cx++){
+                int g = cellGroup[cx + cy * gridW];
+                if(g == -1 || groupTeam[g] == entityTeam) continue;
+
+                float dx = centerX[g] - x, dy = centerY[g] - y, dst = Mathf.len(dx, dy), ext = extent[g];
+                //No member is closer than dst - ext
+                if(dst - ext >= groupMaxRadius[g] + halfSize) continue;
+
+                if(aggregated(g, dst, halfSize, bullet)){
+                    float strength = bullet ?
+                        bulletA[g] - bulletB[g] * dst :
+                        unitA[g] - unitS[g] / (meanRadius[g] + halfSize) * dst;
+                    out.add(dx / dst * strength, dy / dst * strength);
+                }else{
+                    for(int i = head[g]; i != -1; i = next[i]){
+                        if(team[i] != entityTeam) exactHoles.add(i);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param bullet whether the group is applied to a bullet, which members damage within their bullet damage radius instead
+     * @return Whether the group can be applied as a whole to something at the given distance from its centroid.
+     */
+    private boolean aggregated(int g, float dst, float halfSize, boolean bullet){
+        float ext = extent[g];
+        return
+            count[g] > 1 && !groupExact[g] && groupTeam[g] != -1 &&
+            ext < theta * dst &&
+            //Inside the range of every member, and outside the damage range of every member
+            dst + ext < minRadius[g] + halfSize &&
+            dst - ext > (bullet ? groupBulletDamageRadius[g] : groupDamageRadius[g]) + halfSize;
+    }
+
+    /** Adds the exact suction of a single hole on a unit to out, the same way {@link BlackHoleUtils} computes it. */
+    public void exactUnitImpulse(int hole, float x, float y, float halfSize, Vec2 out){
+        float rad = radius[hole] + halfSize;
+        float dx = holeX[hole] - x, dy = holeY[hole] - y, dst2 = dx * dx + dy * dy;
+        if(dst2 >= rad * rad) return;
+
+        float dst = Mathf.sqrt(dst2);
+        float strength = (force[hole] + (1f - dst / rad) * scaledForce[hole]) * sign[hole];
+        if(dst > 0f){
+            out.add(dx / dst * strength, dy / dst * strength);
+        }else{
+            out.add(strength, 0f);
+        }
+    }
+
+    /** Adds the exact suction of a single hole on a bullet to out. */
+    public void exactBulletImpulse(int hole, float x, float y, Vec2 out){
+        float rad = radius[hole];
+        float dx = holeX[hole] - x, dy = holeY[hole] - y, dst2 = dx * dx + dy * dy;
+        if(dst2 >= rad * rad) return;
+
+        float dst = Mathf.sqrt(dst2);
+        float strength = (bulletForce[hole] + (1f - dst / rad) * scaledBulletForce[hole]) * sign[hole];
+        if(dst > 0f){
+            out.add(dx / dst * strength, dy / dst * strength);
+        }else{
+            out.add(strength, 0f);
+        }
+    }
+
+    /** @return Team of a hole. */
+    public int team(int hole){
+        return team[hole];
+    }
+
+    /** @return Bounds of the area any hole may reach, expanded by the given amount. */
+    public Rect reach(float expand, Rect out){
+        if(size == 0) return out.set(0f, 0f, 0f, 0f);
+        float reach = maxRadius + expand;
+        return out.set(minX - reach, minY - reach, gridW * cell + reach * 2f, gridH * cell + reach * 2f);
+    }
+
+    private int group(){
+        int g = groups++;
+        if(g >= head.length){
+            int capacity = g * 2;
+            head = Arrays.copyOf(head, capacity);
+            tail = Arrays.copyOf(tail, capacity);
+            count = Arrays.copyOf(count, capacity);
+            groupTeam = Arrays.copyOf(groupTeam, capacity);
+            groupExact = Arrays.copyOf(groupExact, capacity);
+            centerX = Arrays.copyOf(centerX, capacity);
+            centerY = Arrays.copyOf(centerY, capacity);
+            extent = Arrays.copyOf(extent, capacity);
+            minRadius = Arrays.copyOf(minRadius, capacity);
+            groupMaxRadius = Arrays.copyOf(groupMaxRadius, capacity);
+            meanRadius = Arrays.copyOf(meanRadius, capacity);
+            groupDamageRadius = Arrays.copyOf(groupDamageRadius, capacity);
+            groupBulletDamageRadius = Arrays.copyOf(groupBulletDamageRadius, capacity);
+            unitA = Arrays.copyOf(unitA, capacity);
+            unitS = Arrays.copyOf(unitS, capacity);
+            bulletA = Arrays.copyOf(bulletA, capacity);
+            bulletB = Arrays.copyOf(bulletB, capacity);
+        }
+
+        count[g] = 0;
+        groupExact[g] = false;
+        centerX[g] = centerY[g] = extent[g] = 0f;
+        minRadius[g] = Float.MAX_VALUE;
+        groupMaxRadius[g] = meanRadius[g] = groupDamageRadius[g] = groupBulletDamageRadius[g] = 0f;
+        unitA[g] = unitS[g] = bulletA[g] = bulletB[g] = 0f;
+        return g;
+    }
+
+    private void grow(int capacity){
+        holeX = Arrays.copyOf(holeX, capacity);
+        holeY = Arrays.copyOf(holeY, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        damageRadius = Arrays.copyOf(damageRadius, capacity);
+        bulletDamageRadius = Arrays.copyOf(bulletDamageRadius, capacity);
+        force = Arrays.copyOf(force, capacity);
+        scaledForce = Arrays.copyOf(scaledForce, capacity);
+        bulletForce = Arrays.copyOf(bulletForce, capacity);
+        scaledBulletForce = Arrays.copyOf(scaledBulletForce, capacity);
+        sign = Arrays.copyOf(sign, capacity);
+        team = Arrays.copyOf(team, capacity);
+        next = Arrays.copyOf(next, capacity);
+        exact = Arrays.copyOf(exact, capacity);
+    }
+
+    private int cellX(float x){
+        return Mathf.clamp((int)((x - minX) / cell), 0, gridW - 1);
+    }
+
+    private int cellY(float y){
+        return Mathf.clamp((int)((y - minY) / cell), 0, gridH - 1);
+    }
+}
@@ -0,0 +1,66 @@
+package blackhole.utils;
+
+import mindustry.game.*;
+import mindustry.gen.*;
+
+/** A single black hole update with all of its radii already scaled. Reused between updates. */
+class HoleState{
+    Team team;
+    Posc source;
+    float x, y;
+    float damageRadius, suctionRadius, damage, buildingDamageMultiplier, bulletDamage;
+    float force, scaledForce, bulletForce, scaledBulletForce, forceSign;
+    float damageRadius2, suctionRadius2;
+    boolean pierceArmor, repel;
+
+    /** @param strength multiplier applied to damage and forces */
+    void set(BlackHoleSpec spec, Team team, Posc source, float x, float y, float scl, float damage, float bulletDamage, float strength){
+        this.team = team;
+        this.source = source;
+        this.x = x;
+        this.y = y;
+        this.damage = damage * strength;
+        this.bulletDamage = bulletDamage * strength;
+        pierceArmor = spec.pierceArmor;
+        buildingDamageMultiplier = spec.buildingDamageMultiplier;
+        force = spec.force * strength;
+        scaledForce = spec.scaledForce * strength;
+        bulletForce = spec.bulletForce * strength;
+        scaledBulletForce = spec.scaledBulletForce * strength;
+        repel = spec.repel;
+        forceSign = spec.forceSign;
+
+        //Squared after scaling, like the original per-hole checks, so range checks match them exactly
+        damageRadius = spec.damageRadius * scl;
+        suctionRadius = spec.suctionRadius * scl;
+        damageRadius2 = damageRadius * damageRadius;
+        suctionRadius2 = suctionRadius * suctionRadius;
+    }
+
+    void set(
+        Team team, Posc source, float x, float y,
+        float damageRadius, float suctionRadius,
+        float damage, boolean pierceArmor, float buildingDamageMultiplier, float bulletDamage,
+        boolean repel, float force, float scaledForce, float bulletForce, float scaledBulletForce
+    ){
+        this.team = team;
+        this.source = source;
+        this.x = x;
+        this.y = y;
+        this.damageRadius = damageRadius;
+        this.suctionRadius = suctionRadius;
+        this.damage = damage;
+        this.pierceArmor = pierceArmor;
+        this.buildingDamageMultiplier = buildingDamageMultiplier;
+        this.bulletDamage = bulletDamage;
+        this.force = force;
+        this.scaledForce = scaledForce;
+        this.bulletForce = bulletForce;
+        this.scaledBulletForce = scaledBulletForce;
+        this.repel = repel;
+        forceSign = repel ? -1f : 1f;
+
+        damageRadius2 = damageRadius * damageRadius;
+        suctionRadius2 = suctionRadius * suctionRadius;
+    }
+}
@@ -0,0 +1,338 @@
+package blackhole.utils;
+
+import arc.math.*;
+import arc.math.geom.*;
+import arc.struct.*;
+import mindustry.game.*;
+import mindustry.gen.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Parallel mode of {@link BlackHoleField}.
+ * Units and bullets near holes are copied into flat arrays on the main thread, their net impulse and damage are computed on a fork-join pool,
+ * and the results are applied back on the main thread in the order they were copied, so the outcome doesn't depend on scheduling.
+ * Tasks only read the snapshot and the hole states, and write to their own range of the result arrays and their own scratch.
+ */
+class ParallelField{
+    /** Entities per task. */
+    private static final int chunkSize = 256;
+    private static final int suctionable = 1, damageable = 2, remote = 4, hittable = 8;
+
+    private static ForkJoinPool pool;
+    private static int poolThreads;
+    private static final Seq<Chunk> chunks = new Seq<>(Chunk.class);
+    private static final Root root = new Root();
+    private static int chunkCount;
+    private static final Vec2 commitImpulse = new Vec2();
+
+    private static HoleState[] holes;
+    /** Hole lists of each cell: list l is {@code listHoles[listStart[l]]} to {@code listHoles[listStart[l + 1] - 1]}, in registration order. */
+    private static int[] listStart = new int[16];
+    private static int lists;
+    private static final IntSeq listHoles = new IntSeq();
+
+    private static final Seq<Unit> units = new Seq<>(Unit.class);
+    private static float[] unitX = new float[64], unitY = new float[64], unitHalfSize = new float[64], impulseX = new float[64], impulseY = new float[64];
+    private static int[] unitList = new int[64], unitFlags = new int[64];
+
+    private static final Seq<Bullet> bullets = new Seq<>(Bullet.class);
+    private static float[] bulletX = new float[64], bulletY = new float[64], bulletDamage = new float[64], velX = new float[64], velY = new float[64];
+    private static int[] bulletList = new int[64], bulletFlags = new int[64];
+    private static boolean[] removed = new boolean[64];
+
+    /** Starts a snapshot of the tick's holes. */
+    static void begin(HoleState[] holes){
+        ParallelField.holes = holes;
+        lists = 0;
+        listStart[0] = 0;
+        listHoles.clear();
+    }
+
+    /** Adds the hole list of the next cell. Entities added after this use it. */
+    static void list(IntSeq cellHoles){
+        listHoles.addAll(cellHoles);
+        if(lists + 2 > listStart.length) listStart = Arrays.copyOf(listStart, listStart.length * 2);
+        listStart[++lists] = listHoles.size;
+    }
+
+    static void addUnit(Unit unit){
+        int i = units.size;
+        if(i >= unitX.length){
+            int capacity = i * 2;
+            unitX = Arrays.copyOf(unitX, capacity);
+            unitY = Arrays.copyOf(unitY, capacity);
+            unitHalfSize = Arrays.copyOf(unitHalfSize, capacity);
+            impulseX = Arrays.copyOf(impulseX, capacity);
+            impulseY = Arrays.copyOf(impulseY, capacity);
+            unitList = Arrays.copyOf(unitList, capacity);
+            unitFlags = Arrays.copyOf(unitFlags, capacity);
+        }
+
+        units.add(unit);
+        unitX[i] = unit.x;
+        unitY[i] = unit.y;
+        unitHalfSize[i] = unit.hitSize / 2f;
+        unitList[i] = lists - 1;
+        boolean hit = unit.hittable();
+        unitFlags[i] =
+            (!unit.type.internal && hit && !BlackHoleUtils.isUnitImmune(unit) ? suctionable : 0) |
+            (!unit.dead && hit ? damageable : 0);
+    }
+
+    static void addBullet(Bullet bullet){
+        int i = bullets.size;
+        if(i >= bulletX.length){
+            int capacity = i * 2;
+            bulletX = Arrays.copyOf(bulletX, capacity);
+            bulletY = Arrays.copyOf(bulletY, capacity);
+            bulletDamage = Arrays.copyOf(bulletDamage, capacity);
+            velX = Arrays.copyOf(velX, capacity);
+            velY = Arrays.copyOf(velY, capacity);
+            bulletList = Arrays.copyOf(bulletList, capacity);
+            bulletFlags = Arrays.copyOf(bulletFlags, capacity);
+            removed = Arrays.copyOf(removed, capacity);
+        }
+
+        bullets.add(bullet);
+        bulletX[i] = bullet.x;
+        bulletY[i] = bullet.y;
+        bulletDamage[i] = bullet.damage;
+        bulletList[i] = lists - 1;
+        bulletFlags[i] =
+            (bullet.type.speed > 0.01f && !BlackHoleUtils.isBulletImmune(bullet.type) ? suctionable : 0) |
+            (bullet.isRemote() ? remote : 0) |
+            (bullet.type.hittable ? hittable : 0);
+    }
+
+    /** Computes the snapshot, on the pool if it's large enough, and applies the results. */
+    static void run(){
+        chunkCount = 0;
+        for(int i = 0; i < units.size; i += chunkSize){
+            chunk().set(false, i, Math.min(i + chunkSize, units.size));
+        }
+        for(int i = 0; i < bullets.size; i += chunkSize){
+            chunk().set(true, i, Math.min(i + chunkSize, bullets.size));
+        }
+
+        if(units.size + bullets.size >= BlackHoleField.minParallelEntities && BlackHoleField.parallelThreads > 1){
+            root.reinitialize();
+            pool().invoke(root);
+        }else{
+            for(int i = 0; i < chunkCount; i++){
+                chunks.items[i].run();
+            }
+        }
+
+        int visited = 0, affected = 0;
+        for(int i = 0; i < chunkCount; i++){
+            Chunk chunk = chunks.items[i];
+            if(chunk.bullets){
+                commitBullets(chunk);
+            }else{
+                commitUnits(chunk);
+            }
+            visited += chunk.visited;
+            affected += chunk.affected;
+        }
+        BlackHoleStats.count(visited, affected);
+
+        units.clear();
+        bullets.clear();
+        holes = null;
+    }
+
+    private static Chunk chunk(){
+        if(chunkCount >= chunks.size) chunks.add(new Chunk());
+        return chunks.items[chunkCount++];
+    }
+
+    private static ForkJoinPool pool(){
+        int threads = BlackHoleField.parallelThreads;
+        if(pool == null || poolThreads != threads){
+            if(pool != null) pool.shutdown();
+            pool = new ForkJoinPool(threads);
+            poolThreads = threads;
+        }
+        return pool;
+    }
+
+    /** Same checks as {@link BlackHoleUtils#damageUnit} and {@link BlackHoleUtils#suctionUnit}, summing the impulses. */
+    private static void computeUnits(Chunk c){
+        HoleState[] holes = ParallelField.holes;
+        int[] listHoles = ParallelField.listHoles.items;
+        for(int i = c.start; i < c.end; i++){
+            Unit unit = units.items[i];
+            Team team = unit.team;
+            float x = unitX[i], y = unitY[i], half = unitHalfSize[i];
+            int flags = unitFlags[i], list = unitList[i];
+            float ix = 0f, iy = 0f;
+
+            for(int k = listStart[list]; k < listStart[list + 1]; k++){
+                int index = listHoles[k];
+                HoleState h = holes[index];
+                if(team == h.team) continue;
+
+                if(h.damage > 0f){
+                    c.visited++;
+                    if((flags & damageable) != 0 && Mathf.within(x, y, h.x, h.y, h.damageRadius + half)){
+                        c.affected++;
+                        c.damage.add(i, index);
+                    }
+                }
+
+                c.visited++;
+                if((flags & suctionable) == 0 || h.source == unit) continue;
+
+                float rad = h.suctionRadius + half;
+                float dx = h.x - x, dy = h.y - y, dst2 = dx * dx + dy * dy;
+                if(dst2 >= rad * rad) continue;
+
+                Vec2 impulse = BlackHoleUtils.impulse(h, Angles.angle(x, y, h.x, h.y), h.force + (1f - Mathf.sqrt(dst2) / rad) * h.scaledForce, c.impulse);
+                c.affected++;
+                ix += impulse.x;
+                iy += impulse.y;
+            }
+
+            impulseX[i] = ix;
+            impulseY[i] = iy;
+        }
+    }
+
+    /** Same steps as {@link BlackHoleUtils#suctionBullet}, applied to a local copy of the bullet. */
+    private static void computeBullets(Chunk c){
+        HoleState[] holes = ParallelField.holes;
+        int[] listHoles = ParallelField.listHoles.items;
+        for(int i = c.start; i < c.end; i++){
+            Bullet bullet = bullets.items[i];
+            Team team = bullet.team;
+            float x = bulletX[i], y = bulletY[i], damage = bulletDamage[i];
+            int flags = bulletFlags[i], list = bulletList[i];
+            float vx = 0f, vy = 0f;
+            boolean absorbed = false;
+
+            for(int k = listStart[list]; k < listStart[list + 1]; k++){
+                HoleState h = holes[listHoles[k]];
+                c.visited++;
+                if((flags & suctionable) == 0 || h.source == bullet || h.team == team) continue;
+
+                float dx = h.x - x, dy = h.y - y, dst2 = dx * dx + dy * dy;
+                if(dst2 >= h.suctionRadius2) continue;
+
+                Vec2 impulse = BlackHoleUtils.impulse(h, Angles.angle(x, y, h.x, h.y), h.bulletForce + (1f - Mathf.sqrt(dst2) / h.suctionRadius) * h.scaledBulletForce, c.impulse);
+                float px = impulse.x, py = impulse.y;
+                c.affected++;
+
+                vx += px;
+                vy += py;
+                if((flags & remote) != 0){
+                    x += px;
+                    y += py;
+                }
+
+                if(h.bulletDamage > 0f && (flags & hittable) != 0 && Mathf.dst2(h.x, h.y, x, y) < h.damageRadius2){
+                    if(damage > h.bulletDamage){
+                        damage -= h.bulletDamage;
+                    }else{
+                        absorbed = true;
+                        break;
+                    }
+                }
+            }
+
+            bulletX[i] = x;
+            bulletY[i] = y;
+            velX[i] = vx;
+            velY[i] = vy;
+            bulletDamage[i] = damage;
+            removed[i] = absorbed;
+        }
+    }
+
+    private static void commitUnits(Chunk c){
+        int[] damage = c.damage.items;
+        int d = 0;
+        for(int i = c.start; i < c.end; i++){
+            Unit unit = units.items[i];
+            //Earlier damage can kill the unit, so check again like the serial update does
+            for(; d < c.damage.size && damage[d] == i; d += 2){
+                HoleState h = holes[damage[d + 1]];
+                if(unit.dead) continue;
+                if(h.pierceArmor){
+                    unit.damagePierce(h.damage);
+                }else{
+                    unit.damage(h.damage);
+                }
+            }
+
+            if(impulseX[i] != 0f || impulseY[i] != 0f){
+                unit.impulseNet(commitImpulse.set(impulseX[i], impulseY[i]));
+            }
+        }
+    }
+
+    private static void commitBullets(Chunk c){
+        for(int i = c.start; i < c.end; i++){
+            Bullet bullet = bullets.items[i];
+            bullet.vel.add(velX[i], velY[i]);
+            if((bulletFlags[i] & remote) != 0){
+                bullet.x = bulletX[i];
+                bullet.y = bulletY[i];
+            }
+
+            if(removed[i]){
+                bullet.remove();
+            }else if(bullet.damage != bulletDamage[i]){
+                bullet.damage(bulletDamage[i]);
+            }
+        }
+    }
+
+    private static class Chunk extends RecursiveAction{
+        boolean bullets;
+        int start, end;
+        /** Unit index and hole index of each damage dealt, in unit order. */
+        final IntSeq damage = new IntSeq();
+        /** Scratch for the impulse of a single hole. */
+        final Vec2 impulse = new Vec2();
+        int visited, affected;
+
+        Chunk set(boolean bullets, int start, int end){
+            this.bullets = bullets;
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        void run(){
+            damage.clear();
+            visited = affected = 0;
+            if(bullets){
+                computeBullets(this);
+            }else{
+                computeUnits(this);
+            }
+        }
+
+        @Override
+        protected void compute(){
+            run();
+        }
+    }
+
+    /** Forks every chunk and waits for all of them. */
+    private static class Root extends RecursiveAction{
+        @Override
+        protected void compute(){
+            for(int i = 0; i < chunkCount; i++){
+                Chunk chunk = chunks.items[i];
+                chunk.reinitialize();
+                chunk.fork();
+            }
+            for(int i = chunkCount - 1; i >= 0; i--){
+                chunks.items[i].join();
+            }
+        }
+    }
+}
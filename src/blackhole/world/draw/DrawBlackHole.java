@@ -3,6 +3,8 @@ package blackhole.world.draw;
 import arc.graphics.*;
 import arc.util.*;
 import blackhole.graphics.*;
+import blackhole.utils.*;
+import blackhole.utils.BlackHoleStats.*;
 import mindustry.gen.*;
 import mindustry.world.*;
 import mindustry.world.draw.*;
@@ -27,6 +29,7 @@ public class DrawBlackHole extends DrawBlock{
     @Override
     public void draw(Building build){
         float scl = warmup ? build.warmup() : 1f;
+        BlackHoleStats.hole(Source.block);
         BlackHoleRenderer.addBlackHole(
             build.x + x, build.y + y,
             size * scl, edge * scl,
@@ -0,0 +1,53 @@
+package blackhole.entities.effect;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SwirlBudgetTest{
+    static final int max = 1000;
+
+    /** Before pressure starts, size and position on screen don't matter. */
+    @Test
+    void fullShareWithoutPressure(){
+        int start = (int)(SwirlBudget.pressureStart * max);
+        for(float priority : new float[]{0.01f, 0.3f, 1f}){
+            assertEquals(1f, SwirlBudget.share(priority, 0, max));
+            assertEquals(1f, SwirlBudget.share(priority, start, max));
+        }
+    }
+
+    @Test
+    void noShareWhenHiddenOrFull(){
+        assertEquals(0f, SwirlBudget.share(0f, 0, max));
+        assertEquals(0f, SwirlBudget.share(1f, max, max));
+        assertEquals(0f, SwirlBudget.share(1f, max * 2, max));
+        assertEquals(0f, SwirlBudget.share(1f, 0, 0));
+    }
+
+    /** Under pressure, shares fall with load, lower priorities get less, and nothing jumps right after pressure starts. */
+    @Test
+    void priorityUnderPressure(){
+        int start = (int)(SwirlBudget.pressureStart * max);
+        for(float priority : new float[]{0.01f, 0.3f, 1f}){
+            float last = 1f;
+            for(int live = start + 1; live < max; live++){
+                float share = SwirlBudget.share(priority, live, max);
+                assertTrue(share <= last, "share grew at " + live);
+                assertTrue(last - share < 0.01f, "share jumped at " + live);
+                assertTrue(share <= SwirlBudget.share(1f, live, max));
+                last = share;
+            }
+        }
+
+        int half = (start + max) / 2;
+        assertTrue(SwirlBudget.share(0.2f, half, max) < SwirlBudget.share(0.8f, half, max));
+    }
+
+    @Test
+    void priorityOutsideView(){
+        assertEquals(0f, SwirlBudget.priority(-500f, 0f, 100f, 0f, 0f, 800f, 600f, 1f));
+        assertEquals(0f, SwirlBudget.priority(400f, 300f, 0.5f, 0f, 0f, 800f, 600f, 1f));
+        assertTrue(SwirlBudget.priority(400f, 300f, 100f, 0f, 0f, 800f, 600f, 1f) > SwirlBudget.priority(790f, 590f, 100f, 0f, 0f, 800f, 600f, 1f));
+    }
+}
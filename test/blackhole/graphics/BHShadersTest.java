@@ -0,0 +1,37 @@
+package blackhole.graphics;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BHShadersTest{
+    @Test
+    void tiersFitUniformLimit(){
+        //The smallest tier is always tried, even past the limit
+        assertEquals(1, BHShaders.fittingTiers(16));
+        //A typical GLES 2 limit of 64 vectors only holds the two smallest tiers
+        assertEquals(2, BHShaders.fittingTiers(64));
+        assertEquals(3, BHShaders.fittingTiers(64 * 2 + BHShaders.reservedUniforms));
+        assertEquals(3, BHShaders.fittingTiers(128 * 2 + BHShaders.reservedUniforms - 1));
+        assertEquals(5, BHShaders.fittingTiers(1024));
+        assertEquals(BHShaders.tiers.length, BHShaders.fittingTiers(4096));
+    }
+
+    @Test
+    void unknownLimitTriesEveryTier(){
+        assertEquals(BHShaders.tiers.length, BHShaders.fittingTiers(0));
+    }
+
+    @Test
+    void everyFittingTierFits(){
+        for(int vectors = 1; vectors <= 2048; vectors++){
+            int fitting = BHShaders.fittingTiers(vectors);
+            for(int i = 1; i < fitting; i++){
+                assertTrue(BHShaders.tiers[i] * 2 + BHShaders.reservedUniforms <= vectors, "tier " + BHShaders.tiers[i] + " doesn't fit " + vectors + " vectors");
+            }
+            if(fitting < BHShaders.tiers.length){
+                assertTrue(BHShaders.tiers[fitting] * 2 + BHShaders.reservedUniforms > vectors, "tier " + BHShaders.tiers[fitting] + " fits " + vectors + " vectors");
+            }
+        }
+    }
+}
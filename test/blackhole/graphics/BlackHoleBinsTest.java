@@ -0,0 +1,115 @@
+package blackhole.graphics;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlackHoleBinsTest{
+    static final float camX = -200f, camY = 100f, camW = 1600f, camH = 900f;
+    static final int tilesX = 16, tilesY = 9;
+
+    @Test
+    void binsMatchOverlaps(){
+        float[] zones = zones(new Random(3L), 200, 80f);
+        BlackHoleBins bins = new BlackHoleBins();
+        bins.bin(zones, 200, camX, camY, camW, camH, tilesX, tilesY);
+        check(bins, zones, 200);
+    }
+
+    /** Enough black holes covering the whole view that the index array has to grow several times. */
+    @Test
+    void indicesGrow(){
+        int count = 300;
+        float[] zones = new float[count * 4];
+        for(int i = 0; i < count; i++){
+            zones[i * 4] = camX + camW / 2f;
+            zones[i * 4 + 1] = camY + camH / 2f;
+            zones[i * 4 + 2] = 10f;
+            zones[i * 4 + 3] = camW * 2f;
+        }
+
+        BlackHoleBins bins = new BlackHoleBins();
+        bins.bin(zones, count, camX, camY, camW, camH, tilesX, tilesY);
+        assertEquals(count * tilesX * tilesY, bins.total);
+        for(int t = 0; t < tilesX * tilesY; t++){
+            assertEquals(count, bins.count(t));
+        }
+        check(bins, zones, count);
+    }
+
+    /** Black holes past the edge of the view are clamped into the edge tiles if they still reach them, and dropped otherwise. */
+    @Test
+    void offscreenHoles(){
+        float[] zones = {
+            //Reaches into the left column
+            camX - 50f, camY + 10f, 10f, 60f,
+            //Nowhere near the view
+            camX - 5000f, camY - 5000f, 10f, 60f
+        };
+        BlackHoleBins bins = new BlackHoleBins();
+        bins.bin(zones, 2, camX, camY, camW, camH, tilesX, tilesY);
+
+        assertEquals(1, bins.total);
+        assertEquals(1, bins.count(0));
+        assertEquals(0, bins.indices[bins.offsets[0]]);
+        check(bins, zones, 2);
+    }
+
+    /** Binning again with fewer tiles and holes must not keep anything from the previous frame. */
+    @Test
+    void reuse(){
+        BlackHoleBins bins = new BlackHoleBins();
+        float[] many = zones(new Random(5L), 120, 120f);
+        bins.bin(many, 120, camX, camY, camW, camH, tilesX, tilesY);
+
+        float[] few = zones(new Random(6L), 7, 40f);
+        bins.bin(few, 7, camX, camY, camW, camH, 4, 3);
+        check(bins, few, 7);
+    }
+
+    @Test
+    void emptyFrame(){
+        BlackHoleBins bins = new BlackHoleBins();
+        bins.bin(new float[0], 0, camX, camY, camW, camH, tilesX, tilesY);
+        assertEquals(0, bins.total);
+        for(int t = 0; t < tilesX * tilesY; t++){
+            assertEquals(0, bins.count(t));
+        }
+    }
+
+    static float[] zones(Random rand, int count, float maxRadius){
+        float[] zones = new float[count * 4];
+        for(int i = 0; i < count; i++){
+            zones[i * 4] = camX - maxRadius + rand.nextFloat() * (camW + maxRadius * 2f);
+            zones[i * 4 + 1] = camY - maxRadius + rand.nextFloat() * (camH + maxRadius * 2f);
+            zones[i * 4 + 3] = 1f + rand.nextFloat() * maxRadius;
+            zones[i * 4 + 2] = zones[i * 4 + 3] / 2f;
+        }
+        return zones;
+    }
+
+    /** Checks every tile against a brute force overlap test, and that its black holes are in ascending order. */
+    static void check(BlackHoleBins bins, float[] zones, int count){
+        int tiles = bins.tilesX * bins.tilesY;
+        float tileW = camW / bins.tilesX, tileH = camH / bins.tilesY;
+        assertEquals(bins.offsets[tiles], bins.total);
+
+        for(int ty = 0; ty < bins.tilesY; ty++){
+            for(int tx = 0; tx < bins.tilesX; tx++){
+                int t = tx + ty * bins.tilesX;
+                int[] expected = new int[count];
+                int size = 0;
+                for(int i = 0; i < count; i++){
+                    if(BlackHoleBins.overlaps(zones[i * 4], zones[i * 4 + 1], zones[i * 4 + 3], camX + tx * tileW, camY + ty * tileH, tileW, tileH)){
+                        expected[size++] = i;
+                    }
+                }
+
+                int[] actual = Arrays.copyOfRange(bins.indices, bins.offsets[t], bins.offsets[t + 1]);
+                assertArrayEquals(Arrays.copyOf(expected, size), actual, "tile " + tx + ", " + ty);
+            }
+        }
+    }
+}
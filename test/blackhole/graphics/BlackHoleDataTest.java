@@ -0,0 +1,67 @@
+package blackhole.graphics;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlackHoleDataTest{
+    @Test
+    void texelLayout(){
+        int count = 700;
+        float[] zones = new float[count * 4], colors = new float[count * 4];
+        for(int i = 0; i < count * 4; i++){
+            zones[i] = i;
+            colors[i] = -i;
+        }
+
+        BlackHoleData data = new BlackHoleData();
+        int rows = data.pack(zones, colors, count);
+        assertEquals(2, rows);
+        assertEquals(rows, data.rows);
+
+        for(int i = 0; i < count; i++){
+            //Black hole i is at texels 2i and 2i + 1, wrapping into the next row past the width
+            int texel = i * 2, row = texel / BlackHoleData.width, column = texel % BlackHoleData.width;
+            int t = (row * BlackHoleData.width + column) * 4;
+            for(int c = 0; c < 4; c++){
+                assertEquals(zones[i * 4 + c], data.texels[t + c], "zone of " + i);
+                assertEquals(colors[i * 4 + c], data.texels[t + 4 + c], "color of " + i);
+            }
+        }
+    }
+
+    @Test
+    void rows(){
+        BlackHoleData data = new BlackHoleData();
+        int half = BlackHoleData.width / 2;
+        float[] zones = new float[(half * 3 + 1) * 4];
+
+        assertEquals(1, data.pack(zones, zones, 0));
+        assertEquals(1, data.pack(zones, zones, 1));
+        assertEquals(1, data.pack(zones, zones, half));
+        assertEquals(2, data.pack(zones, zones, half + 1));
+        assertEquals(3, data.pack(zones, zones, half * 3));
+        assertEquals(4, data.pack(zones, zones, half * 3 + 1));
+        assertTrue(data.texels.length >= 4 * BlackHoleData.width * 4);
+    }
+
+    /** A full texture of the given size holds exactly the capacity, and one more black hole takes another row. */
+    @Test
+    void capacity(){
+        for(int size : new int[]{1, 2, 4, 16}){
+            int capacity = BlackHoleData.capacity(size);
+            assertEquals(BlackHoleData.width * size / 2, capacity);
+
+            float[] zones = new float[(capacity + 1) * 4];
+            BlackHoleData data = new BlackHoleData();
+            assertEquals(size, data.pack(zones, zones, capacity));
+            assertEquals(size + 1, data.pack(zones, zones, capacity + 1));
+        }
+    }
+
+    @Test
+    void capacityDoesNotOverflow(){
+        assertTrue(BlackHoleData.capacity(16384) > 0);
+        assertTrue(BlackHoleData.capacity(32768) > BlackHoleData.capacity(16384));
+    }
+}
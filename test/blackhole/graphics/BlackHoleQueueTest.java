@@ -0,0 +1,83 @@
+package blackhole.graphics;
+
+import arc.graphics.*;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlackHoleQueueTest{
+    float tolerance;
+
+    @BeforeEach
+    void save(){
+        tolerance = BlackHoleQueue.coalesceTolerance;
+    }
+
+    @AfterEach
+    void restore(){
+        BlackHoleQueue.coalesceTolerance = tolerance;
+    }
+
+    /** The earliest zone keeps its center and grows to enclose the one merged into it. */
+    @Test
+    void mergeEnclosesBoth(){
+        BlackHoleQueue queue = queue();
+        queue.addZone(100f, 100f, 10f, 20f, Color.white);
+        queue.addZone(101.5f, 100f, 12f, 18f, Color.white);
+        queue.coalesce();
+
+        assertEquals(1, queue.zoneCount);
+        assertEquals(1, queue.coalescedZones);
+        assertEquals(100f, queue.zones[0]);
+        assertEquals(100f, queue.zones[1]);
+        assertEquals(13.5f, queue.zones[2], 1e-5f);
+        assertEquals(20f, queue.zones[3], 1e-5f);
+    }
+
+    @Test
+    void farZonesStaySeparate(){
+        BlackHoleQueue queue = queue();
+        queue.addZone(100f, 100f, 10f, 20f, Color.white);
+        queue.addZone(103f, 100f, 10f, 20f, Color.white);
+        queue.coalesce();
+        assertEquals(2, queue.zoneCount);
+    }
+
+    /** Every submitted zone's horizon and lensing area stay inside the zone it ends up in. */
+    @Test
+    void randomMergesCover(){
+        BlackHoleQueue.coalesceTolerance = 4f;
+        Random rand = new Random(13L);
+        BlackHoleQueue queue = queue();
+        int count = 300;
+        float[] added = new float[count * 4];
+        for(int i = 0; i < count; i++){
+            float x = 200f + rand.nextFloat() * 60f, y = 200f + rand.nextFloat() * 60f, in = 1f + rand.nextFloat() * 10f, out = in + rand.nextFloat() * 20f;
+            added[i * 4] = x;
+            added[i * 4 + 1] = y;
+            added[i * 4 + 2] = in;
+            added[i * 4 + 3] = out;
+            queue.addZone(x, y, in, out, Color.white);
+        }
+        queue.coalesce();
+        assertTrue(queue.coalescedZones > 0);
+        assertEquals(count, queue.zoneCount + queue.coalescedZones);
+
+        for(int i = 0; i < count; i++){
+            boolean covered = false;
+            for(int z = 0; z < queue.zoneCount && !covered; z++){
+                float dst = (float)Math.hypot(added[i * 4] - queue.zones[z * 4], added[i * 4 + 1] - queue.zones[z * 4 + 1]);
+                covered = dst + added[i * 4 + 2] <= queue.zones[z * 4 + 2] + 1e-4f && dst + added[i * 4 + 3] <= queue.zones[z * 4 + 3] + 1e-4f;
+            }
+            assertTrue(covered, "zone " + i + " isn't enclosed by any merged zone");
+        }
+    }
+
+    static BlackHoleQueue queue(){
+        BlackHoleQueue queue = new BlackHoleQueue();
+        queue.view(0f, 0f, 1000f, 1000f, 1f);
+        return queue;
+    }
+}
@@ -0,0 +1,84 @@
+package blackhole.graphics;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LensingScaleTest{
+    static final int[] screens = {1, 7, 720, 1080, 1366, 2160, 3840};
+    static final float[] cameras = {-1234.5f, 0f, 4000.25f};
+    static final float[] zooms = {0.25f, 1f, 6f};
+    /** Allowed error in texels. */
+    static final float tolerance = 0.01f;
+
+    @Test
+    void scaleClamps(){
+        assertEquals(1f, LensingScale.scale(-1));
+        assertEquals(1f, LensingScale.scale(0));
+        assertEquals(0.25f, LensingScale.scale(LensingScale.scales.length));
+    }
+
+    @Test
+    void bufferCoversScreen(){
+        for(int screen : screens){
+            for(float scale : LensingScale.scales){
+                int size = LensingScale.bufferSize(screen, scale);
+                assertTrue(size >= 1);
+                assertTrue(size >= screen * scale, "buffer of " + size + " doesn't cover " + screen + " at " + scale);
+                assertTrue(size < screen * scale + 1f);
+            }
+        }
+    }
+
+    @Test
+    void roundTrip(){
+        each((buffer, camStart, camSize) -> {
+            for(int texel = 0; texel < buffer; texel++){
+                float world = LensingScale.texelToWorld(texel, buffer, camStart, camSize);
+                assertEquals(texel, LensingScale.worldToTexel(world, buffer, camStart, camSize), tolerance);
+            }
+        });
+    }
+
+    @Test
+    void edgeTexels(){
+        each((buffer, camStart, camSize) -> {
+            float texelSize = camSize / buffer, worldTolerance = tolerance * texelSize;
+
+            //Texel edges line up with the camera edges, so the outer texel centers are half a texel inside
+            assertEquals(camStart + texelSize / 2f, LensingScale.texelToWorld(0, buffer, camStart, camSize), worldTolerance);
+            assertEquals(camStart + camSize - texelSize / 2f, LensingScale.texelToWorld(buffer - 1, buffer, camStart, camSize), worldTolerance);
+            assertEquals(-0.5f, LensingScale.worldToTexel(camStart, buffer, camStart, camSize), tolerance);
+            assertEquals(buffer - 0.5f, LensingScale.worldToTexel(camStart + camSize, buffer, camStart, camSize), tolerance);
+        });
+    }
+
+    @Test
+    void shaderUniformsMatch(){
+        each((buffer, camStart, camSize) -> {
+            float scale = LensingScale.texelScale(buffer, camSize), offset = LensingScale.texelOffset(buffer, camStart, camSize);
+            for(float f = 0f; f <= 1f; f += 0.125f){
+                float world = camStart + f * camSize;
+                assertEquals(LensingScale.worldToTexel(world, buffer, camStart, camSize), world * scale + offset, tolerance);
+            }
+        });
+    }
+
+    /** Runs the check for every screen size, lensing scale, camera position and zoom. */
+    static void each(Mapping check){
+        for(int screen : screens){
+            for(float scale : LensingScale.scales){
+                int buffer = LensingScale.bufferSize(screen, scale);
+                for(float camStart : cameras){
+                    for(float zoom : zooms){
+                        check.get(buffer, camStart, screen / zoom);
+                    }
+                }
+            }
+        }
+    }
+
+    interface Mapping{
+        void get(int buffer, float camStart, float camSize);
+    }
+}
@@ -0,0 +1,178 @@
+package blackhole.graphics;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScreenRegionsTest{
+    int maxRegions;
+
+    @BeforeEach
+    void save(){
+        maxRegions = ScreenRegions.maxRegions;
+    }
+
+    @AfterEach
+    void restore(){
+        ScreenRegions.maxRegions = maxRegions;
+    }
+
+    @Test
+    void overlappingMerge(){
+        ScreenRegions regions = new ScreenRegions();
+        regions.add(0, 0, 10, 10);
+        regions.add(5, 5, 20, 20);
+        assertEquals(1, regions.size);
+        assertRegion(regions, 0, 0, 0, 20, 20);
+    }
+
+    @Test
+    void touchingStaySeparate(){
+        ScreenRegions regions = new ScreenRegions();
+        regions.add(0, 0, 10, 10);
+        regions.add(10, 0, 20, 10);
+        assertEquals(2, regions.size);
+        assertEquals(200, regions.area());
+    }
+
+    /** A merged region can grow into regions that were checked before it grew. */
+    @Test
+    void chainedMerge(){
+        ScreenRegions regions = new ScreenRegions();
+        regions.add(0, 0, 10, 10);
+        regions.add(30, 0, 40, 10);
+        regions.add(8, 0, 32, 10);
+        assertEquals(1, regions.size);
+        assertRegion(regions, 0, 0, 0, 40, 10);
+    }
+
+    @Test
+    void emptyIgnored(){
+        ScreenRegions regions = new ScreenRegions();
+        regions.add(5, 5, 5, 10);
+        regions.add(5, 5, 10, 4);
+        assertEquals(0, regions.size);
+    }
+
+    /** Past the limit, regions are merged instead of added, and every rectangle stays covered. */
+    @Test
+    void maxRegionsLimit(){
+        ScreenRegions.maxRegions = 8;
+        ScreenRegions regions = new ScreenRegions();
+        List<int[]> added = new ArrayList<>();
+        for(int i = 0; i < 40; i++){
+            int[] rect = {i * 20, (i % 3) * 20, i * 20 + 10, (i % 3) * 20 + 10};
+            added.add(rect);
+            regions.add(rect[0], rect[1], rect[2], rect[3]);
+            assertTrue(regions.size <= ScreenRegions.maxRegions, "size " + regions.size + " after " + (i + 1));
+            check(regions, added);
+        }
+        assertEquals(ScreenRegions.maxRegions, regions.size);
+    }
+
+    /** Merging at the limit picks the region that grows the least. */
+    @Test
+    void limitMergesClosest(){
+        ScreenRegions.maxRegions = 2;
+        ScreenRegions regions = new ScreenRegions();
+        regions.add(0, 0, 10, 10);
+        regions.add(100, 0, 110, 10);
+        regions.add(112, 0, 120, 10);
+
+        assertEquals(2, regions.size);
+        assertRegion(regions, indexOf(regions, 0), 0, 0, 10, 10);
+        assertRegion(regions, indexOf(regions, 100), 100, 0, 120, 10);
+    }
+
+    @Test
+    void randomStaysDisjointAndCovering(){
+        Random rand = new Random(9L);
+        for(int limit : new int[]{1, 4, 32}){
+            ScreenRegions.maxRegions = limit;
+            ScreenRegions regions = new ScreenRegions();
+            List<int[]> added = new ArrayList<>();
+            for(int i = 0; i < 200; i++){
+                int x = rand.nextInt(1000), y = rand.nextInt(1000);
+                int[] rect = {x, y, x + 1 + rand.nextInt(60), y + 1 + rand.nextInt(60)};
+                added.add(rect);
+                regions.add(rect[0], rect[1], rect[2], rect[3]);
+            }
+            assertTrue(regions.size <= limit);
+            check(regions, added);
+        }
+    }
+
+    @Test
+    void projectClampsAndPads(){
+        ScreenRegions regions = new ScreenRegions();
+        float[] zones = {
+            //Camera spans 0 to 200 world units over 100 pixels
+            50f, 50f, 5f, 10f,
+            //Partly past the right edge
+            195f, 100f, 5f, 20f,
+            //Entirely off screen
+            -500f, -500f, 5f, 10f
+        };
+        regions.project(zones, 3, 0f, 0f, 200f, 200f, 100, 100, 1);
+
+        assertEquals(2, regions.size);
+        assertRegion(regions, indexOf(regions, 19), 19, 19, 31, 31);
+        assertRegion(regions, indexOf(regions, 86), 86, 39, 100, 61);
+    }
+
+    @Test
+    void scaleCoversSource(){
+        ScreenRegions source = new ScreenRegions(), scaled = new ScreenRegions();
+        source.add(3, 5, 17, 11);
+        source.add(40, 40, 61, 63);
+        scaled.scale(source, 0.5f, 50, 50, 1);
+
+        assertEquals(2, scaled.size);
+        assertRegion(scaled, indexOf(scaled, 0), 0, 1, 10, 7);
+        assertRegion(scaled, indexOf(scaled, 19), 19, 19, 32, 33);
+    }
+
+    @Test
+    void coversScreen(){
+        ScreenRegions regions = new ScreenRegions();
+        regions.add(0, 0, 50, 100);
+        assertFalse(regions.covers(100, 100));
+        regions.add(50, 0, 100, 100);
+        assertTrue(regions.covers(100, 100));
+    }
+
+    static int indexOf(ScreenRegions regions, int x){
+        for(int i = 0; i < regions.size; i++){
+            if(regions.x(i) == x) return i;
+        }
+        fail("No region starts at x " + x);
+        return -1;
+    }
+
+    static void assertRegion(ScreenRegions regions, int i, int x1, int y1, int x2, int y2){
+        assertEquals(x1, regions.x(i), "x1");
+        assertEquals(y1, regions.y(i), "y1");
+        assertEquals(x2 - x1, regions.width(i), "width");
+        assertEquals(y2 - y1, regions.height(i), "height");
+    }
+
+    /** Regions never overlap, and every added rectangle lies inside one of them. */
+    static void check(ScreenRegions regions, List<int[]> added){
+        int[] r = regions.rects;
+        for(int i = 0; i < regions.size; i++){
+            for(int j = i + 1; j < regions.size; j++){
+                assertFalse(ScreenRegions.overlaps(r[i * 4], r[i * 4 + 1], r[i * 4 + 2], r[i * 4 + 3], r[j * 4], r[j * 4 + 1], r[j * 4 + 2], r[j * 4 + 3]), "regions " + i + " and " + j + " overlap");
+            }
+        }
+
+        for(int[] rect : added){
+            boolean inside = false;
+            for(int i = 0; i < regions.size && !inside; i++){
+                inside = r[i * 4] <= rect[0] && r[i * 4 + 1] <= rect[1] && r[i * 4 + 2] >= rect[2] && r[i * 4 + 3] >= rect[3];
+            }
+            assertTrue(inside, "rectangle " + Arrays.toString(rect) + " isn't covered");
+        }
+    }
+}
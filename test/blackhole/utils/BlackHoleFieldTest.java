@@ -0,0 +1,105 @@
+package blackhole.utils;
+
+import arc.*;
+import arc.math.*;
+import arc.struct.*;
+import blackhole.headless.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+import mindustry.world.*;
+import org.junit.jupiter.api.*;
+
+import static mindustry.Vars.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares {@link BlackHoleField} against applying the same holes one by one with {@link BlackHoleUtils#blackHoleUpdate}.
+ * Health, deaths, bullet damage and absorption must match exactly. Positions and velocities may differ by {@link #tolerance},
+ * since knockback from deaths can be added before instead of after another hole's impulse, and parallel mode sums each unit's impulses before adding them.
+ * Nothing else updates in between, so the field's end of tick timing doesn't matter here.
+ */
+public class BlackHoleFieldTest{
+    static final int ticks = 20;
+    static final float health = 100f;
+    /** Allowed difference in positions and velocities, relative to the value and at least this much in absolute terms. */
+    static final float tolerance = 1e-5f;
+
+    static final BlackHoleSpec[] specs = {
+        //Damage inside the suction radius, pulling, repelling and piercing
+        new BlackHoleSpec(10f, 160f, 30f, false, 1f, 10f, false, 10f, 800f, 0.1f, 1f),
+        new BlackHoleSpec(10f, 160f, 30f, false, 1f, 10f, true, 10f, 800f, 0.1f, 1f),
+        new BlackHoleSpec(10f, 160f, 30f, true, 0.5f, 10f, false, 10f, 800f, 0.1f, 1f),
+        //Damage reaching past the suction radius
+        new BlackHoleSpec(120f, 40f, 30f, false, 1f, 10f, false, 10f, 800f, 0.1f, 1f)
+    };
+
+    @AfterEach
+    void restore(){
+        BlackHoleField.parallel = false;
+    }
+
+    @Test
+    void matchesPerHole(){
+        compare();
+    }
+
+    @Test
+    void parallelMatchesPerHole(){
+        BlackHoleField.parallel = true;
+        compare();
+    }
+
+    void compare(){
+        for(int i = 0; i < specs.length; i++){
+            Result separate = run(specs[i], false), field = run(specs[i], true);
+
+            assertEquals(separate.exact.size, field.exact.size, "Spec " + i);
+            for(int j = 0; j < separate.exact.size; j++){
+                float a = separate.exact.items[j], b = field.exact.items[j];
+                assertEquals(Float.floatToIntBits(a), Float.floatToIntBits(b), "Spec " + i + ", exact value " + j + ": " + a + " per hole vs " + b + " field");
+            }
+
+            assertEquals(separate.close.size, field.close.size, "Spec " + i);
+            for(int j = 0; j < separate.close.size; j++){
+                float a = separate.close.items[j], b = field.close.items[j];
+                assertEquals(a, b, Math.max(Math.abs(a), 1f) * tolerance, "Spec " + i + ", value " + j + ": " + a + " per hole vs " + b + " field");
+            }
+        }
+    }
+
+    Result run(BlackHoleSpec spec, boolean field){
+        BenchWorld bench = new BenchWorld(7L, 120, 1500, 400, 24, 0.2f, health);
+        //Deaths roll for effects and fires
+        Mathf.rand.setSeed(7L);
+
+        for(int t = 0; t < ticks; t++){
+            for(int i = 0; i < bench.sources.size; i++){
+                if(field){
+                    BlackHoleField.register(spec, BenchWorld.holeTeam, bench.sources.get(i), 0f, 0f, 1f);
+                }else{
+                    BlackHoleUtils.blackHoleUpdate(spec, BenchWorld.holeTeam, bench.sources.get(i), 0f, 0f, 1f);
+                }
+            }
+            if(field) Events.fire(Trigger.afterGameUpdate);
+        }
+
+        Result result = new Result();
+        for(Unit unit : bench.units){
+            result.exact.add(unit.health, unit.dead ? 1f : 0f);
+            result.close.add(unit.x, unit.y, unit.vel.x, unit.vel.y);
+        }
+        for(Bullet bullet : bench.bullets){
+            result.exact.add(bullet.damage, bullet.isAdded() ? 1f : 0f);
+            //Per hole, later holes keep pulling a bullet after an earlier one absorbed it
+            if(bullet.isAdded()) result.close.add(bullet.x, bullet.y, bullet.vel.x, bullet.vel.y);
+        }
+        for(Tile tile : world.tiles){
+            if(tile.build != null) result.exact.add(tile.build.health);
+        }
+        return result;
+    }
+
+    static class Result{
+        final FloatSeq exact = new FloatSeq(), close = new FloatSeq();
+    }
+}
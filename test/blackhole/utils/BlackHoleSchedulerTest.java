@@ -0,0 +1,68 @@
+package blackhole.utils;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlackHoleSchedulerTest{
+    float range;
+
+    @BeforeEach
+    void save(){
+        range = BlackHoleScheduler.priorityRange;
+    }
+
+    @AfterEach
+    void restore(){
+        BlackHoleScheduler.priorityRange = range;
+        BlackHoleScheduler.endTick(0, 0L);
+    }
+
+    @Test
+    void noPlayersIsHighPriority(){
+        BlackHoleScheduler.setPlayers(new float[0], 0);
+        assertTrue(BlackHoleScheduler.highPriority(0f, 0f));
+        assertTrue(BlackHoleScheduler.highPriority(-1e6f, 1e6f));
+    }
+
+    /** The cell lookup must agree with checking the distance to every player, including across cell edges and negative coordinates. */
+    @Test
+    void matchesBruteForce(){
+        Random rand = new Random(11L);
+        for(float range : new float[]{640f, 100f, 33.3f}){
+            BlackHoleScheduler.priorityRange = range;
+            for(int count : new int[]{1, 3, 40}){
+                float[] players = new float[count * 2];
+                for(int i = 0; i < players.length; i++){
+                    players[i] = (rand.nextFloat() - 0.5f) * 4000f;
+                }
+                BlackHoleScheduler.setPlayers(players.clone(), count);
+
+                for(int s = 0; s < 2000; s++){
+                    float x = (rand.nextFloat() - 0.5f) * 4400f, y = (rand.nextFloat() - 0.5f) * 4400f;
+                    assertEquals(bruteForce(players, count, x, y, range), BlackHoleScheduler.highPriority(x, y), "hole at " + x + ", " + y + " with range " + range);
+                }
+            }
+        }
+    }
+
+    @Test
+    void edgeOfRange(){
+        BlackHoleScheduler.priorityRange = 100f;
+        BlackHoleScheduler.setPlayers(new float[]{0f, 0f}, 1);
+        assertTrue(BlackHoleScheduler.highPriority(99.9f, 0f));
+        assertTrue(BlackHoleScheduler.highPriority(-70f, -70f));
+        assertFalse(BlackHoleScheduler.highPriority(100.1f, 0f));
+        assertFalse(BlackHoleScheduler.highPriority(-71f, -71f));
+    }
+
+    static boolean bruteForce(float[] players, int count, float x, float y, float range){
+        for(int i = 0; i < count; i++){
+            float dx = players[i * 2] - x, dy = players[i * 2 + 1] - y;
+            if(dx * dx + dy * dy < range * range) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,156 @@
+package blackhole.utils;
+
+import arc.math.*;
+import arc.math.geom.*;
+import arc.struct.*;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FarFieldTest{
+    static final int holes = 2000, samples = 2000;
+    static final float area = 2400f, halfSize = 4f;
+    /**
+     * Allowed mean error relative to the exact impulse, and largest error relative to the summed pull of every hole, for the default theta.
+     * Measured at about 9% and 16%.
+     */
+    static final float meanTolerance = 0.12f, maxTolerance = 0.2f;
+    /** Same as above for a theta of 0.1, measured at about 0.5% and 5%. */
+    static final float tightMeanTolerance = 0.01f, tightMaxTolerance = 0.08f;
+
+    @Test
+    void equalRadiiAccuracy(){
+        check(new FarField().theta, false, meanTolerance, maxTolerance);
+        check(0.1f, false, tightMeanTolerance, tightMaxTolerance);
+    }
+
+    @Test
+    void mixedRadiiAccuracy(){
+        check(new FarField().theta, true, meanTolerance, maxTolerance);
+        check(0.1f, true, tightMeanTolerance, tightMaxTolerance);
+    }
+
+    @Test
+    void lowerThetaIsMoreAccurate(){
+        Error loose = measure(1f, true), tight = measure(0.25f, true);
+        assertTrue(tight.unitMean <= loose.unitMean, "theta 0.25 has a unit mean error of " + tight.unitMean + ", theta 1 " + loose.unitMean);
+        assertTrue(tight.bulletMean <= loose.bulletMean, "theta 0.25 has a bullet mean error of " + tight.bulletMean + ", theta 1 " + loose.bulletMean);
+    }
+
+    /** Holes that only damage bullets must still be evaluated exactly for bullets inside their damage radius. */
+    @Test
+    void bulletDamageStaysExact(){
+        FarField field = new FarField();
+        //Close enough together to be grouped, and far enough from the sample for the group to be aggregated otherwise
+        field.add(0f, 0f, 200f, 0f, 100f, 10f, 800f, 0.1f, 1f, 1f, 0, false);
+        field.add(10f, 0f, 200f, 0f, 100f, 10f, 800f, 0.1f, 1f, 1f, 0, false);
+        field.build();
+
+        IntSeq exact = new IntSeq();
+        Vec2 impulse = new Vec2();
+
+        //Within the damage radius of the second hole
+        field.bulletImpulse(95f, 0f, 1, impulse, exact);
+        assertTrue(impulse.isZero(), "bullet damaging group was aggregated");
+        assertTrue(exact.contains(0) && exact.contains(1), "bullet damaging holes weren't listed for exact evaluation");
+
+        //The holes don't damage units, so units at the same spot can still use the aggregate
+        exact.clear();
+        field.unitImpulse(95f, 0f, 0f, 1, impulse.setZero(), exact);
+        assertFalse(impulse.isZero(), "group wasn't aggregated for units");
+        assertEquals(0, exact.size);
+
+        exact.clear();
+        field.damageHoles(95f, 0f, 0f, 1, exact);
+        assertEquals(0, exact.size, "holes without unit damage were listed as damaging units");
+    }
+
+    /** The same group without any bullet damage is aggregated for bullets, so the test above isn't passing by accident. */
+    @Test
+    void harmlessGroupIsAggregated(){
+        FarField field = new FarField();
+        field.add(0f, 0f, 200f, 0f, 0f, 10f, 800f, 0.1f, 1f, 1f, 0, false);
+        field.add(10f, 0f, 200f, 0f, 0f, 10f, 800f, 0.1f, 1f, 1f, 0, false);
+        field.build();
+
+        IntSeq exact = new IntSeq();
+        Vec2 impulse = new Vec2();
+        field.bulletImpulse(95f, 0f, 1, impulse, exact);
+        assertFalse(impulse.isZero());
+        assertEquals(0, exact.size);
+    }
+
+    static void check(float theta, boolean mixedRadii, float meanTolerance, float maxTolerance){
+        Error error = measure(theta, mixedRadii);
+        String at = " at theta " + theta;
+        assertTrue(error.unitMean < meanTolerance, "unit mean error of " + error.unitMean + at);
+        assertTrue(error.unitMax < maxTolerance, "unit max error of " + error.unitMax + at);
+        assertTrue(error.bulletMean < meanTolerance, "bullet mean error of " + error.bulletMean + at);
+        assertTrue(error.bulletMax < maxTolerance, "bullet max error of " + error.bulletMax + at);
+    }
+
+    /** Compares the far field's impulses against exact evaluation of every hole at random positions. */
+    static Error measure(float theta, boolean mixedRadii){
+        Rand rand = new Rand(42L);
+        FarField field = new FarField();
+        field.theta = theta;
+        for(int i = 0; i < holes; i++){
+            float radius = mixedRadii ? rand.random(60f, 160f) : 100f;
+            field.add(rand.random(area), rand.random(area), radius, radius / 16f, radius / 16f, 10f, 800f, 0.1f, 1f, 1f, 0, false);
+        }
+        field.build();
+
+        IntSeq exactHoles = new IntSeq();
+        Vec2 exact = new Vec2(), approx = new Vec2(), single = new Vec2();
+        Error out = new Error();
+
+        for(int s = 0; s < samples; s++){
+            float x = rand.random(area), y = rand.random(area), total = 0f;
+
+            exact.setZero();
+            for(int i = 0; i < holes; i++){
+                field.exactUnitImpulse(i, x, y, halfSize, single.setZero());
+                exact.add(single);
+                total += single.len();
+            }
+            exactHoles.clear();
+            field.unitImpulse(x, y, halfSize, 1, approx.setZero(), exactHoles);
+            for(int i = 0; i < exactHoles.size; i++) field.exactUnitImpulse(exactHoles.items[i], x, y, halfSize, approx);
+            out.unitMean += relative(exact, approx) / samples;
+            out.unitMax = Math.max(out.unitMax, absolute(exact, approx, total));
+
+            total = 0f;
+            exact.setZero();
+            for(int i = 0; i < holes; i++){
+                field.exactBulletImpulse(i, x, y, single.setZero());
+                exact.add(single);
+                total += single.len();
+            }
+            exactHoles.clear();
+            field.bulletImpulse(x, y, 1, approx.setZero(), exactHoles);
+            for(int i = 0; i < exactHoles.size; i++) field.exactBulletImpulse(exactHoles.items[i], x, y, approx);
+            out.bulletMean += relative(exact, approx) / samples;
+            out.bulletMax = Math.max(out.bulletMax, absolute(exact, approx, total));
+        }
+        return out;
+    }
+
+    /** @return Error of the approximation relative to the exact impulse. */
+    static float relative(Vec2 exact, Vec2 approx){
+        float len = exact.len();
+        return len < 0.0001f ? approx.len() : Mathf.dst(exact.x, exact.y, approx.x, approx.y) / len;
+    }
+
+    /**
+     * Pulls from opposite sides cancel out, so a small error can be large relative to the exact impulse.
+     * @return Error of the approximation relative to the summed strength of every hole's pull.
+     */
+    static float absolute(Vec2 exact, Vec2 approx, float total){
+        return total < 0.0001f ? approx.len() : Mathf.dst(exact.x, exact.y, approx.x, approx.y) / total;
+    }
+
+    static class Error{
+        /** Mean error relative to the exact impulse, and largest error relative to the summed pull, over every sample. */
+        float unitMean, unitMax, bulletMean, bulletMax;
+    }
+}
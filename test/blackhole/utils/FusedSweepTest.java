@@ -0,0 +1,123 @@
+package blackhole.utils;
+
+import arc.*;
+import arc.math.*;
+import arc.struct.*;
+import blackhole.headless.*;
+import mindustry.content.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+import mindustry.world.*;
+import org.junit.jupiter.api.*;
+
+import static mindustry.Vars.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the same holes over identical worlds with {@link BlackHoleUtils#fusedSweep} on and off,
+ * and compares every unit, bullet and building bit for bit.
+ * Units and bullets are weak enough that some of them die or get absorbed along the way.
+ * Daggers die without disturbing anything, so flares that crash into the units around them are tested as well.
+ */
+public class FusedSweepTest{
+    static final int ticks = 20;
+    static final float health = 100f;
+
+    static final BlackHoleSpec[] specs = {
+        //Damage inside the suction radius, pulling, repelling and piercing
+        new BlackHoleSpec(10f, 160f, 30f, false, 1f, 10f, false, 10f, 800f, 0.1f, 1f),
+        new BlackHoleSpec(10f, 160f, 30f, false, 1f, 10f, true, 10f, 800f, 0.1f, 1f),
+        new BlackHoleSpec(10f, 160f, 30f, true, 0.5f, 10f, false, 10f, 800f, 0.1f, 1f),
+        //Damage reaching past the suction radius
+        new BlackHoleSpec(120f, 40f, 30f, false, 1f, 10f, false, 10f, 800f, 0.1f, 1f),
+        //No damage
+        new BlackHoleSpec(10f, 160f, 0f, false, 1f, 0f, false, 10f, 800f, 0.1f, 1f)
+    };
+
+    @AfterEach
+    void restore(){
+        BlackHoleUtils.fusedSweep = true;
+    }
+
+    @Test
+    void blackHoleUpdate(){
+        compare(false);
+    }
+
+    @Test
+    void field(){
+        compare(true);
+    }
+
+    @Test
+    void crashes(){
+        compare(false, true);
+    }
+
+    @Test
+    void fieldCrashes(){
+        compare(true, true);
+    }
+
+    void compare(boolean field){
+        compare(field, false);
+    }
+
+    void compare(boolean field, boolean crashers){
+        boolean killed = false, crashed = false;
+        for(int i = 0; i < specs.length; i++){
+            Result separate = run(specs[i], field, false, crashers), fused = run(specs[i], field, true, crashers);
+            killed |= separate.killed > 0;
+            crashed |= separate.crashed > 0;
+
+            assertEquals(separate.values.size, fused.values.size, "Spec " + i);
+            for(int j = 0; j < separate.values.size; j++){
+                float a = separate.values.items[j], b = fused.values.items[j];
+                assertEquals(Float.floatToIntBits(a), Float.floatToIntBits(b), "Spec " + i + ", value " + j + ": " + a + " separate vs " + b + " fused");
+            }
+        }
+        assertTrue(killed, "No unit died, so the order of damage and suction wasn't tested");
+        if(crashers) assertTrue(crashed, "No flare crashed, so units pushed by deaths weren't tested");
+    }
+
+    /** @return State of every unit, bullet and building after applying the holes for a number of ticks. */
+    Result run(BlackHoleSpec spec, boolean field, boolean fused, boolean crashers){
+        BlackHoleUtils.fusedSweep = fused;
+        BenchWorld bench = new BenchWorld(7L, 120, 1500, 400, 24, 0.2f, health, crashers);
+        //Deaths roll for effects and fires
+        Mathf.rand.setSeed(7L);
+
+        for(int t = 0; t < ticks; t++){
+            for(int i = 0; i < bench.sources.size; i++){
+                if(field){
+                    BlackHoleField.register(spec, BenchWorld.holeTeam, bench.sources.get(i), 0f, 0f, 1f);
+                }else{
+                    BlackHoleUtils.blackHoleUpdate(spec, BenchWorld.holeTeam, bench.sources.get(i), 0f, 0f, 1f);
+                }
+            }
+            if(field) Events.fire(Trigger.afterGameUpdate);
+        }
+
+        Result result = new Result();
+        FloatSeq out = result.values;
+        for(Unit unit : bench.units){
+            out.add(unit.x, unit.y, unit.vel.x, unit.vel.y);
+            out.add(unit.health, unit.dead ? 1f : 0f);
+            if(unit.dead) result.killed++;
+            if(unit.dead && unit.type == UnitTypes.flare) result.crashed++;
+        }
+        for(Bullet bullet : bench.bullets){
+            out.add(bullet.x, bullet.y, bullet.vel.x, bullet.vel.y);
+            out.add(bullet.damage, bullet.isAdded() ? 1f : 0f);
+        }
+        for(Tile tile : world.tiles){
+            if(tile.build != null) out.add(tile.build.health);
+        }
+        return result;
+    }
+
+    static class Result{
+        final FloatSeq values = new FloatSeq();
+        int killed, crashed;
+    }
+}